@@ -0,0 +1,101 @@
+package org.example.c2server;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier thread, which happens when they block
+ * inside a synchronized block or a native frame and stops the carrier running other virtual threads.
+ * Streams the JDK's own jdk.VirtualThreadPinned flight recorder events and logs each one with where
+ * it happened.
+ * Only runs when virtual threads are enabled with spring.threads.virtual.enabled=true.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class PinningMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PinningMonitor.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int FRAMES_LOGGED = 8;
+
+    private final boolean enabled;
+    private final Duration threshold;
+    private final LongAdder pinnedCount = new LongAdder();
+    private RecordingStream stream;
+
+    /**
+     * Creates the monitor.
+     *
+     * @param virtualThreads Whether requests run on virtual threads.
+     * @param threshold How long a virtual thread must stay pinned before it is reported.
+     */
+    public PinningMonitor(@Value("${spring.threads.virtual.enabled:false}") final boolean virtualThreads,
+                          @Value("${mountain.virtual-threads.pinned-threshold:PT0.02S}") final Duration threshold) {
+        this.enabled = virtualThreads;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Starts streaming pinning events if virtual threads are enabled.
+     */
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::report);
+        stream.startAsync();
+    }
+
+    /**
+     * Stops streaming pinning events.
+     */
+    @PreDestroy
+    void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * Gets how many times a virtual thread has been reported pinned since startup.
+     *
+     * @return The number of pinning events.
+     */
+    public long pinnedCount() {
+        return pinnedCount.sum();
+    }
+
+    /**
+     * Counts and logs one pinning event.
+     *
+     * @param event The jdk.VirtualThreadPinned event.
+     */
+    private void report(final RecordedEvent event) {
+        pinnedCount.increment();
+
+        final StringBuilder where = new StringBuilder();
+        if (event.getStackTrace() != null) {
+            for (RecordedFrame frame : event.getStackTrace().getFrames().stream().limit(FRAMES_LOGGED).toList()) {
+                where.append("\n\tat ").append(frame.getMethod().getType().getName()).append('.')
+                        .append(frame.getMethod().getName()).append(':').append(frame.getLineNumber());
+            }
+        }
+        LOG.warn("Virtual thread {} pinned to its carrier for {} ms (#{}){}",
+                event.getThread() == null ? "?" : event.getThread().getJavaName(),
+                event.getDuration().toMillis(), pinnedCount.sum(), where);
+    }
+}
@@ -0,0 +1,133 @@
+package org.example.c2server;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Opens many slow connections at once, each trickling its request body over a few seconds, against
+ * the server running first on pooled platform threads and then on virtual threads, and prints the
+ * server's peak platform thread count, peak heap use and request latency percentiles.
+ * The clients run in the same JVM on virtual threads, so they add to the heap figure but not the
+ * thread count. Only runs when asked for, and needs an open file limit above twice the connections:
+ * mvn test -Dtest=SlowClientLoadTest -Dloadtest=true [-Dloadtest.connections=10000 -Dloadtest.trickle=PT2S]
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class SlowClientLoadTest {
+
+    private static final int CONNECTIONS = Integer.getInteger("loadtest.connections", 10_000);
+    private static final Duration TRICKLE = Duration.parse(System.getProperty("loadtest.trickle", "PT2S"));
+    private static final int CHUNKS = 10;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void slowClients(final boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext server = new SpringApplicationBuilder(C2ServerApplication.class)
+                .run("--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--server.tomcat.max-connections=" + (CONNECTIONS + 100),
+                        "--server.tomcat.accept-count=" + CONNECTIONS)) {
+            int port = Integer.parseInt(server.getEnvironment().getProperty("local.server.port"));
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            AtomicLong peakThreads = new AtomicLong();
+            AtomicLong peakHeap = new AtomicLong();
+            AtomicInteger failures = new AtomicInteger();
+            long[] latencies = new long[CONNECTIONS];
+
+            Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    peakThreads.accumulateAndGet(threads.getThreadCount(), Math::max);
+                    peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+
+            long started = System.nanoTime();
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < CONNECTIONS; i++) {
+                    final int client = i;
+                    clients.submit(() -> {
+                        long start = System.nanoTime();
+                        try {
+                            if (!slowPost(port, client)) {
+                                failures.incrementAndGet();
+                            }
+                        } catch (IOException | InterruptedException e) {
+                            failures.incrementAndGet();
+                        }
+                        latencies[client] = System.nanoTime() - start;
+                    });
+                }
+            }
+            long elapsed = System.nanoTime() - started;
+            sampler.interrupt();
+
+            Arrays.sort(latencies);
+            System.out.printf("%s threads, %,d slow connections: %d peak platform threads, %,d MB peak heap, "
+                            + "p50 %,d ms, p99 %,d ms, max %,d ms, %d failed, %,d ms in total%n",
+                    virtualThreads ? "virtual" : "platform", CONNECTIONS, peakThreads.get(),
+                    peakHeap.get() / (1024 * 1024), millis(latencies[CONNECTIONS / 2]),
+                    millis(latencies[CONNECTIONS * 99 / 100]), millis(latencies[CONNECTIONS - 1]), failures.get(),
+                    millis(elapsed));
+            assertEquals(0, failures.get());
+        }
+    }
+
+    /**
+     * Adds one mountain, sending the body a few bytes at a time spread over the trickle time.
+     *
+     * @param port The server's port.
+     * @param client The client's number, used to make its mountain unique.
+     * @return True if the server answered 200.
+     */
+    private static boolean slowPost(final int port, final int client) throws IOException, InterruptedException {
+        byte[] body = ("[{\"name\":\"Slow " + client + "\",\"altitude\":1000,\"range\":\"Andes\","
+                + "\"country\":\"Peru\",\"isNorthern\":false}]").getBytes(StandardCharsets.UTF_8);
+        String headers = "POST / HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+                + "Content-Length: " + body.length + "\r\nConnection: close\r\n\r\n";
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(headers.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            int chunk = (body.length + CHUNKS - 1) / CHUNKS;
+            for (int offset = 0; offset < body.length; offset += chunk) {
+                Thread.sleep(TRICKLE.toMillis() / CHUNKS);
+                out.write(body, offset, Math.min(chunk, body.length - offset));
+                out.flush();
+            }
+            InputStream in = socket.getInputStream();
+            byte[] statusLine = new byte[12];
+            return in.readNBytes(statusLine, 0, statusLine.length) == statusLine.length
+                    && new String(statusLine, StandardCharsets.US_ASCII).endsWith(" 200");
+        }
+    }
+
+    private static long millis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * The outcome of adding a single mountain, as returned by the server for each mountain in a POST.
+ * @author 2014459
+ * @version 1.0
+ */
+public class AddResult {
+
+    /**
+     * The per-item status of an add.
+     */
+    public enum Status {
+        CREATED,
+        ALREADY_EXISTED,
+        CONFLICT
+    }
+
+    private int id;
+    private Status status;
+
+    /**
+     * Create an empty AddResult object
+     */
+    public AddResult() {}
+
+    /**
+     * Return the ID the server holds for the mountain - newly generated if it was created
+     * @return the mountain's ID
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Return whether the mountain was created, already existed, or conflicted with a stored mountain
+     * @return the add status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Set the mountain's ID
+     * @param id the mountain's ID
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Set the add status
+     * @param status the add status
+     */
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+}
@@ -5,6 +5,7 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -18,6 +19,7 @@ import java.util.Optional;
 public class MountainConnector {
 
     private static final String SERVICE_URI = "http://localhost:8080/";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final HttpClient client = HttpClient.newHttpClient();
 
@@ -31,19 +33,38 @@ public class MountainConnector {
      * Adds a list of mountains to the service.
      *
      * @param mountains The list of mountains.
-     * @return An optional containing the response from the server,
-     * or empty if an error has occurred.
+     * @return An optional containing the response from the server, with the ID and status
+     * of each submitted mountain, or empty if an error has occurred.
      */
     public Optional<Response> addMountains(final List<Mountain> mountains) {
+        return addMountains(mountains, null);
+    }
+
+    /**
+     * Adds a list of mountains to the service, tagged with an idempotency key so the call can be
+     * retried safely - a retry with the same key returns the original result without adding again.
+     *
+     * @param mountains The list of mountains.
+     * @param idempotencyKey A key unique to this logical add, or null for none.
+     * @return An optional containing the response from the server, with the ID and status
+     * of each submitted mountain, or empty if an error has occurred.
+     */
+    public Optional<Response> addMountains(final List<Mountain> mountains, final String idempotencyKey) {
         try {
-            HttpRequest request = HttpRequest.newBuilder()
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
                     .uri(new URI(SERVICE_URI))
                     .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(mountains)))
-                    .header("Content-Type", "application/json")
-                    .build();
+                    .header("Content-Type", "application/json");
+            if (idempotencyKey != null) {
+                builder.header(IDEMPOTENCY_KEY, idempotencyKey);
+            }
+            HttpRequest request = builder.build();
 
             HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            Response customResponse = new Response(Collections.emptyList(), response);
+            List<AddResult> results = response.body().isEmpty()
+                    ? Collections.emptyList()
+                    : objectMapper.readValue(response.body(), new TypeReference<>(){});
+            Response customResponse = new Response(Collections.emptyList(), results, response);
             return Optional.of(customResponse);
 
         } catch (Exception e) {
@@ -160,6 +181,36 @@ public class MountainConnector {
         }
     }
 
+    /**
+     * Runs several queries in one request, all against the same state of the server's data.
+     *
+     * @param queries The queries to run.
+     * @return An Optional with one response per query, in the order given - each shares the
+     * raw response of the batch request - or an empty Optional if an error occurs.
+     */
+    public Optional<List<Response>> batchQuery(final List<MountainQuery> queries) {
+        try {
+            String uri = SERVICE_URI + "query";
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(new URI(uri))
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(queries)))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.body().isEmpty()) {
+                return Optional.empty();
+            }
+            List<List<Mountain>> results = objectMapper.readValue(response.body(), new TypeReference<>(){});
+            List<Response> responses = new ArrayList<>(results.size());
+            for (List<Mountain> mountains : results) {
+                responses.add(new Response(mountains, response));
+            }
+            return Optional.of(responses);
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
     /**
      * Updates a mountain by its ID.
      *
@@ -183,6 +234,28 @@ public class MountainConnector {
         }
     }
 
+    /**
+     * Inserts a mountain, or replaces the one with the same name, range and country, in one request.
+     *
+     * @param mountain The mountain to insert or replace.
+     * @return An Optional with the server's response, whose body is the mountain's ID,
+     * or an empty Optional if an error occurs.
+     */
+    public Optional<Response> upsert(final Mountain mountain) {
+        try {
+            String uri = SERVICE_URI + "upsert-mountain";
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(new URI(uri))
+                    .PUT(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(mountain)))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            return Optional.of(new Response(Collections.emptyList(), response));
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
     /**
      * Deletes a mountain by its ID.
      *
@@ -203,4 +276,52 @@ public class MountainConnector {
             return Optional.empty();
         }
     }
+
+    /**
+     * Deletes every mountain in a country.
+     *
+     * @param country The country parameter.
+     * @return An Optional with the server's response, whose body is the number of deleted mountains,
+     * or an empty Optional if an error occurs.
+     */
+    public Optional<Response> deleteByCountry(final String country) {
+        String path = "country/" + country;
+        return deleteMountains(path);
+    }
+
+    /**
+     * Deletes every mountain in a country and range.
+     *
+     * @param country The country parameter.
+     * @param range The range parameter.
+     * @return An Optional with the server's response, whose body is the number of deleted mountains,
+     * or an empty Optional if an error occurs.
+     */
+    public Optional<Response> deleteByCountryAndRange(final String country, final String range) {
+        String path = "country/" + country + "/range/" + range;
+        return deleteMountains(path);
+    }
+
+    /**
+     * Deletes every mountain matching the given path arguments in one request.
+     * Takes the same arguments as getMountains, although at least one filter is required.
+     *
+     * @param pathArgs The path arguments for the DELETE request.
+     * @return An Optional with the server's response, whose body is the number of deleted mountains,
+     * or an empty Optional if an error occurs.
+     */
+    public Optional<Response> deleteMountains(final String pathArgs) {
+        try {
+            String separator = pathArgs.startsWith("?") ? "" : "/";
+            String uri = SERVICE_URI + "delete-mountains" + separator + pathArgs;
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(new URI(uri))
+                    .DELETE()
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            return Optional.of(new Response(Collections.emptyList(), response));
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
 }
@@ -0,0 +1,143 @@
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A single filter spec sent in a batch query - takes the same criteria as the GET methods of MountainConnector,
+ * where a null criterion matches every mountain.
+ * @author 2014459
+ * @version 1.0
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MountainQuery {
+
+    private String country;
+    private String range;
+    private String name;
+    private Integer id;
+    private Boolean northernHemisphere;
+    private Integer altitude;
+
+    /**
+     * Create a query that matches every mountain
+     */
+    public MountainQuery() {}
+
+    /**
+     * Create a query for mountains in a country
+     * @param country the country
+     * @return the query
+     */
+    public static MountainQuery byCountry(final String country) {
+        MountainQuery query = new MountainQuery();
+        query.country = country;
+        return query;
+    }
+
+    /**
+     * Create a query for mountains in a country and range
+     * @param country the country
+     * @param range the range
+     * @return the query
+     */
+    public static MountainQuery byCountryAndRange(final String country, final String range) {
+        MountainQuery query = byCountry(country);
+        query.range = range;
+        return query;
+    }
+
+    /**
+     * Create a query for a mountain by its name
+     * @param country the mountain's country
+     * @param range the mountain's range
+     * @param name the mountain's name
+     * @return the query
+     */
+    public static MountainQuery byName(final String country, final String range, final String name) {
+        MountainQuery query = byCountryAndRange(country, range);
+        query.name = name;
+        return query;
+    }
+
+    /**
+     * Create a query for a mountain by its ID
+     * @param id the mountain's ID
+     * @return the query
+     */
+    public static MountainQuery byId(final int id) {
+        MountainQuery query = new MountainQuery();
+        query.id = id;
+        return query;
+    }
+
+    /**
+     * Create a query for mountains in a hemisphere
+     * @param isNorthern true for the Northern hemisphere, false for the Southern
+     * @return the query
+     */
+    public static MountainQuery byHemisphere(final boolean isNorthern) {
+        MountainQuery query = new MountainQuery();
+        query.northernHemisphere = isNorthern;
+        return query;
+    }
+
+    /**
+     * Create a query for mountains in a country over an altitude
+     * @param country the country
+     * @param altitude the altitude the mountains must be higher than
+     * @return the query
+     */
+    public static MountainQuery byCountryAltitude(final String country, final int altitude) {
+        MountainQuery query = byCountry(country);
+        query.altitude = altitude;
+        return query;
+    }
+
+    /**
+     * Return the country filter
+     * @return the country, or null if not filtered
+     */
+    public String getCountry() {
+        return country;
+    }
+
+    /**
+     * Return the range filter
+     * @return the range, or null if not filtered
+     */
+    public String getRange() {
+        return range;
+    }
+
+    /**
+     * Return the name filter
+     * @return the name, or null if not filtered
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the ID filter
+     * @return the ID, or null if not filtered
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Return the hemisphere filter
+     * @return true for the Northern hemisphere, false for the Southern, or null if not filtered
+     */
+    @JsonProperty("northern-hemisphere")
+    public Boolean getNorthernHemisphere() {
+        return northernHemisphere;
+    }
+
+    /**
+     * Return the altitude filter
+     * @return the altitude the mountains must be higher than, or null if not filtered
+     */
+    public Integer getAltitude() {
+        return altitude;
+    }
+}
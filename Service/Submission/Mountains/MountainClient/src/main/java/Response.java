@@ -1,4 +1,5 @@
 import java.net.http.HttpResponse;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -13,6 +14,7 @@ import java.util.List;
 public class Response {
     private final List<Mountain> mountains;
     private final HttpResponse<String> response;
+    private final List<AddResult> results;
 
     /**
      * Generate a Response object consisting of the list of Mountain objects returned by the server - which may be
@@ -22,7 +24,19 @@ public class Response {
      * @param response The "raw" response object
      */
     public Response(final List<Mountain> mountains, final HttpResponse<String> response) {
+        this(mountains, Collections.emptyList(), response);
+    }
+
+    /**
+     * Generate a Response object that also carries the per-mountain results of an add (POST)
+     * @param mountains The (possibly empty) list of Mountain objects
+     * @param results The (possibly empty) list of add results, in the order the mountains were submitted
+     * @param response The "raw" response object
+     */
+    public Response(final List<Mountain> mountains, final List<AddResult> results,
+                    final HttpResponse<String> response) {
         this.mountains = mountains;
+        this.results = results;
         this.response = response;
     }
 
@@ -34,6 +48,14 @@ public class Response {
         return mountains;
     }
 
+    /**
+     * Get the possibly empty list of add results - only populated for an add (POST)
+     * @return the List of AddResult objects
+     */
+    public List<AddResult> getResults() {
+        return results;
+    }
+
     /**
      * Get the response returned by the server - note that response.request() is the orginal request so this contains
      * details of both the request made and the response returned.
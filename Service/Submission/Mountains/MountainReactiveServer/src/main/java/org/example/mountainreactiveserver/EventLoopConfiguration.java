@@ -0,0 +1,29 @@
+package org.example.mountainreactiveserver;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Runs the HTTP server on a small, fixed set of event loop threads, which every connection shares,
+ * so the thread count does not grow with the number of streaming or long-polling clients.
+ * @author 2014459
+ * @version 1.0
+ */
+@Configuration
+public class EventLoopConfiguration {
+
+    /**
+     * Gives the server its own event loop threads.
+     *
+     * @param threads How many event loop threads to run; 0 for one per available processor.
+     * @return The customizer that installs them.
+     */
+    @Bean
+    public NettyServerCustomizer eventLoops(@Value("${mountain.event-loop.threads:0}") final int threads) {
+        final int count = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return server -> server.runOn(LoopResources.create("mountain-http", count, true));
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.mountainreactiveserver;
+
+/**
+ * A change made to the store, as sent to clients streaming or long-polling for changes.
+ *
+ * @param seq The change's sequence number; each change is one higher than the last.
+ * @param type What happened to the mountain.
+ * @param mountain The mountain as it is after the change, or as it was before a delete.
+ * @author 2014459
+ * @version 1.0
+ */
+public record MountainChange(long seq, Type type, Mountain mountain) {
+
+    /**
+     * The kind of change.
+     */
+    public enum Type {
+        /** The mountain was added. */
+        ADDED,
+        /** The mountain's details were replaced. */
+        UPDATED,
+        /** The mountain was deleted. */
+        DELETED
+    }
+}
@@ -0,0 +1,13 @@
+package org.example.mountainreactiveserver;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class MountainReactiveServerApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(MountainReactiveServerApplication.class, args);
+    }
+
+}
@@ -0,0 +1,291 @@
+package org.example.mountainreactiveserver;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Reactive REST controller for managing mountains, with the same routes as the servlet server.
+ * Handlers never block: results are streamed from the store as the client reads them, and
+ * clients can also stream or long-poll for changes.
+ * @author 2014459
+ * @version 1.0
+ */
+@RestController
+public class MountainResource {
+
+    private final ReactiveMountainStore store;
+    private final Duration longPollTimeout;
+
+    /**
+     * Creates the controller.
+     *
+     * @param store The store holding the mountains.
+     * @param longPollTimeout How long a long-polling request waits for a change.
+     */
+    public MountainResource(final ReactiveMountainStore store,
+                            @Value("${mountain.long-poll.timeout:PT30S}") final Duration longPollTimeout) {
+        this.store = store;
+        this.longPollTimeout = longPollTimeout;
+    }
+
+    /**
+     * Adds a list of mountains. Each mountain is handled on its own, so new mountains
+     * are stored even if others in the batch clash with existing ones.
+     *
+     * @param mountains The list of mountains to add.
+     * @return A ResponseEntity with the result of each mountain, in the order submitted,
+     * and the appropriate status code.
+     */
+    @PostMapping(value = "/", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<List<AddResult>>> addMountains(@RequestBody final List<Mountain> mountains) {
+
+        if (mountains.isEmpty()) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+
+        return store.addMountains(mountains);
+    }
+
+
+    /**
+     * Gets mountains based on the given criteria, streamed as a JSON array or, if asked for,
+     * as newline-delimited JSON. Mountains are read from the store only as fast as the client
+     * takes them.
+     *
+     * @param country The mountain's country.
+     * @param range The mountain's range.
+     * @param name The mountain's name.
+     * @param id The mountain's id.
+     * @param hemisphere The hemisphere filter.
+     * @param altitude The altitude filter.
+     * @return A ResponseEntity with the stream of filtered mountains
+     * or an appropriate status code.
+     */
+    @GetMapping(value = {"/", "country/{country}",
+            "country/{country}/range/{range}",
+            "country/{country}/range/{range}/name/{name}", "id/{id}"
+    },
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<Flux<Mountain>>> getMountains(
+            @PathVariable(name = "country", required = false) final String country,
+            @PathVariable(name = "range", required = false) final String range,
+            @PathVariable(name = "name", required = false) final String name,
+            @PathVariable(name = "id", required = false) final String id,
+            @RequestParam(name = "northern-hemisphere", required = false) final String hemisphere,
+            @RequestParam(name = "altitude", required = false) String altitude) {
+
+        if (notValidMountain(country, range, name, hemisphere, altitude) || notValidId(id)) {
+            return Mono.just(ResponseEntity.ok(Flux.empty()));
+        }
+
+        // one scan: the status waits for the first match, and the body carries on from it as it is streamed
+        return store.find(buildFilter(country, range, name, id, hemisphere, altitude))
+                .<ResponseEntity<Flux<Mountain>>>switchOnFirst((first, matches) -> {
+                    if (first.isOnError()) {
+                        return Mono.error(first.getThrowable());
+                    }
+                    return Mono.just(first.hasValue()
+                            ? ResponseEntity.ok(matches)
+                            : ResponseEntity.noContent().build());
+                }, false)
+                .single();
+    }
+
+    /**
+     * Streams changes to the mountains as server-sent events or newline-delimited JSON,
+     * for as long as the client stays connected.
+     *
+     * @return The stream of changes.
+     */
+    @GetMapping(value = "changes", produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<MountainChange> streamChanges() {
+        return store.changes();
+    }
+
+    /**
+     * Long-polls for changes: answers as soon as there is a change after the given sequence number,
+     * or with 204 if none is made before the timeout.
+     *
+     * @param after The sequence number of the last change the client has seen, 0 for none.
+     * @return A ResponseEntity with the changes since then, oldest first, or an appropriate status code.
+     */
+    @GetMapping(value = "changes/next", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<List<MountainChange>>> nextChanges(
+            @RequestParam(name = "after", defaultValue = "0") final long after) {
+
+        if (after < 0) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+
+        return store.changesAfter(after, longPollTimeout).map(changes -> changes.isEmpty()
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.ok(changes));
+    }
+
+    /**
+     * Updates an existing mountain based on the ID.
+     *
+     * @param id the mountain's identifier.
+     * @param newMountain the mountain object with updated variables.
+     * @return A ResponseEntity with the appropriate status code.
+     */
+    @PutMapping(value = "update-mountain/{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<Void>> updateMountain(@PathVariable("id") int id,
+                                                     @RequestBody Mountain newMountain) {
+
+        if (notValidMountain(newMountain.getCountry(), newMountain.getRange(), newMountain.getName(),
+                String.valueOf(newMountain.getIsNorthern()), String.valueOf(newMountain.getAltitude()))) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+
+        return store.updateMountain(id, newMountain);
+    }
+
+    /**
+     * Deletes a mountain from their ID.
+     *
+     * @param id the mountain's ID.
+     * @return A ResponseEntity with the appropriate status code.
+     */
+    @DeleteMapping(value = "delete-mountain/{id}")
+    public Mono<ResponseEntity<Void>> deleteMountain(@PathVariable("id") int id) {
+        return store.deleteMountain(id);
+    }
+
+    /**
+     * Builds the predicate for the filtering routes. A null criterion matches every mountain.
+     *
+     * @param mountainCountry The country filter.
+     * @param mountainRange The range filter.
+     * @param mountainName The name filter.
+     * @param id The ID filter.
+     * @param hemisphere The hemisphere filter.
+     * @param altitude The altitude filter.
+     * @return A predicate matching mountains that satisfy every criterion.
+     */
+    private Predicate<Mountain> buildFilter(final String mountainCountry, final String mountainRange,
+                                            final String mountainName, final String id, final String hemisphere,
+                                            final String altitude) {
+        final Integer wantedId = id == null ? null : Integer.parseInt(id);
+        final Integer above = altitude == null ? null : Integer.parseInt(altitude);
+        Predicate<Mountain> filter = mountain -> mountainCountry == null
+                || mountain.getCountry().equals(mountainCountry);
+        return filter
+                .and(mountain -> mountainRange == null || mountain.getRange().equals(mountainRange))
+                .and(mountain -> mountainName == null || mountain.getName().equals(mountainName))
+                .and(mountain -> wantedId == null || mountain.getId() == wantedId)
+                .and(mountain -> hemisphere == null || String.valueOf(mountain.getIsNorthern()).equals(hemisphere))
+                .and(mountain -> above == null || mountain.getAltitude() > above);
+    }
+
+    /**
+     * Checking if a mountain is valid by name, and matching a country to
+     * ones provided.
+     *
+     * @param country The mountain's country.
+     * @param name The mountain's name.
+     * @return True if the mountain is not valid, false otherwise.
+     */
+    private boolean notValidMountain(String country, String range, String name, String hemisphere, String altitude) {
+        boolean validCountry = country == null || isValidCountry(country);
+        boolean validRange = range == null || isValidRange(range);
+        boolean validName = name == null || isValidName(name);
+        boolean validHemisphere = hemisphere == null || isValidHemisphere(hemisphere);
+        boolean validAltitude = altitude == null || isValidAltitude(altitude);
+        return !validCountry || !validRange || !validName || !validHemisphere || !validAltitude;
+    }
+
+    /**
+     * Check if an ID filter is given but is not a number.
+     *
+     * @param id The ID filter.
+     * @return True if the ID is not valid, false otherwise.
+     */
+    private boolean notValidId(String id) {
+        if (id == null) {
+            return false;
+        }
+        try {
+            Integer.parseInt(id);
+            return false;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Check if the country is valid from an array of countries.
+     *
+     * @param country The country to check.
+     * @return True if the country is valid, false otherwise.
+     */
+    private boolean isValidCountry(String country) {
+        //ideally all countries in the world should be added or stored elsewhere
+        List<String> validCountries = Arrays.asList("Argentina", "Nepal", "Peru", "Wales", "Cymru");
+        return validCountries.contains(country);
+    }
+
+    /**
+     * Check if the mountain's range is valid.
+     *
+     * @param range The mountain's range.
+     * @return True is the range is valid, false otherwise.
+     */
+    private boolean isValidRange(String range) {
+        List<String> validRanges = Arrays.asList("Eryri", "Snowdonia", "Andes", //more ranges should be added
+                "Himalayas", "BannauBrycheiniog", "Annapurna");
+        return validRanges.contains(range);
+    }
+
+    /**
+     * Check if the name of a mountain is valid.
+     *
+     * @param name The name to check.
+     * @return True if the name is valid, false otherwise.
+     */
+    private boolean isValidName(String name) {
+        return name != null && !name.isEmpty();
+    }
+
+    /**
+     * Check if the hemisphere is valid.
+     *
+     * @param hemisphere The mountain's hemisphere.
+     * @return True if the mountain's hemisphere is valid, false otherwise.
+     */
+    private boolean isValidHemisphere(String hemisphere) {
+        return "true".equals(hemisphere) || "false".equals(hemisphere);
+    }
+
+    /**
+     * Check if the altitude is valid.
+     *
+     * @param altitude The mountain's altitude.
+     * @return True if the altitude is valid, false otherwise.
+     */
+    private boolean isValidAltitude(String altitude) {
+        try {
+            int altitudeVal = Integer.parseInt(altitude);
+            return altitudeVal > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.example.mountainreactiveserver;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * Non-blocking, in-memory store of mountains. Reads iterate concurrent maps lazily, so results are
+ * produced only as fast as the subscriber asks for them. Changes run one at a time on a dedicated
+ * writer thread rather than behind a lock, so no event loop thread ever waits for another writer.
+ * Every change is numbered and published to subscribers of the change stream, and the most recent
+ * ones are kept for long-polling clients to catch up from.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class ReactiveMountainStore {
+
+    private static final int FIRST_ID = 1;
+    private static final int STREAM_BUFFER = 256;
+
+    private final ConcurrentNavigableMap<Integer, Mountain> mountains = new ConcurrentSkipListMap<>();
+    private final Map<Mountain, Integer> idsByKey = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, MountainChange> recentChanges = new ConcurrentSkipListMap<>();
+    private final Sinks.Many<MountainChange> changes = Sinks.many().multicast().directBestEffort();
+    private final Scheduler writer = Schedulers.newSingle("mountain-writer", true);
+    private final int retainedChanges;
+
+    private int nextId = FIRST_ID;
+    private volatile long lastSeq;
+
+    /**
+     * Creates the store.
+     *
+     * @param retainedChanges How many recent changes are kept for long-polling clients.
+     */
+    public ReactiveMountainStore(@Value("${mountain.changes.retained:10000}") final int retainedChanges) {
+        this.retainedChanges = retainedChanges;
+    }
+
+    /**
+     * Stops the writer thread.
+     */
+    @PreDestroy
+    void stop() {
+        writer.dispose();
+    }
+
+    /**
+     * Gets the mountains matching a filter, in ID order, as the subscriber requests them.
+     *
+     * @param filter The filter to match.
+     * @return The matching mountains.
+     */
+    public Flux<Mountain> find(final Predicate<Mountain> filter) {
+        return Flux.defer(() -> Flux.fromIterable(mountains.values())).filter(filter);
+    }
+
+    /**
+     * Adds a list of mountains. Each mountain is handled on its own, so new mountains
+     * are stored even if others in the batch clash with existing ones.
+     *
+     * @param newMountains The list of mountains to add.
+     * @return A ResponseEntity with the result of each mountain, in the order submitted,
+     * and the appropriate status code.
+     */
+    public Mono<ResponseEntity<List<AddResult>>> addMountains(final List<Mountain> newMountains) {
+        return write(() -> {
+            final List<AddResult> results = new ArrayList<>(newMountains.size());
+            boolean anyCreated = false;
+            for (Mountain mountain : newMountains) {
+                final Integer storedId = idsByKey.get(mountain);
+                if (storedId == null) {
+                    final int id = nextId++;
+                    final Mountain stored = copyOf(mountain, id);
+                    mountains.put(id, stored);
+                    idsByKey.put(stored, id);
+                    publish(MountainChange.Type.ADDED, stored);
+                    results.add(new AddResult(id, AddResult.Status.CREATED));
+                    anyCreated = true;
+                } else {
+                    final Mountain stored = mountains.get(storedId);
+                    if (stored.getAltitude() == mountain.getAltitude()
+                            && stored.getIsNorthern() == mountain.getIsNorthern()) {
+                        results.add(new AddResult(storedId, AddResult.Status.ALREADY_EXISTED));
+                    } else {
+                        results.add(new AddResult(storedId, AddResult.Status.CONFLICT));
+                    }
+                }
+            }
+
+            if (anyCreated) {
+                return ResponseEntity.ok(results);
+            } else {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(results);
+            }
+        });
+    }
+
+    /**
+     * Updates an existing mountain based on the ID.
+     *
+     * @param id the mountain's identifier.
+     * @param newMountain the mountain object with updated variables.
+     * @return A ResponseEntity with the appropriate status code.
+     */
+    public Mono<ResponseEntity<Void>> updateMountain(final int id, final Mountain newMountain) {
+        return write(() -> {
+            final Mountain previous = mountains.get(id);
+            if (previous == null) {
+                return ResponseEntity.notFound().build();
+            }
+            final Mountain stored = copyOf(newMountain, id);
+            mountains.put(id, stored);
+            idsByKey.remove(previous, id);
+            idsByKey.put(stored, id);
+            publish(MountainChange.Type.UPDATED, stored);
+            return ResponseEntity.ok().build();
+        });
+    }
+
+    /**
+     * Deletes a mountain from their ID.
+     *
+     * @param id the mountain's ID.
+     * @return A ResponseEntity with the appropriate status code.
+     */
+    public Mono<ResponseEntity<Void>> deleteMountain(final int id) {
+        return write(() -> {
+            final Mountain removed = mountains.remove(id);
+            if (removed == null) {
+                return ResponseEntity.notFound().build();
+            }
+            idsByKey.remove(removed, id);
+            publish(MountainChange.Type.DELETED, removed);
+            return ResponseEntity.ok().build();
+        });
+    }
+
+    /**
+     * Streams changes as they happen. Each subscriber has its own small buffer, and one that falls
+     * further behind loses its oldest unsent changes rather than holding up the writer or other
+     * subscribers; the gap shows in the sequence numbers.
+     *
+     * @return The live change stream.
+     */
+    public Flux<MountainChange> changes() {
+        return changes.asFlux()
+                .onBackpressureBuffer(STREAM_BUFFER, dropped -> { }, BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    /**
+     * Waits for changes after the given sequence number, for long-polling clients.
+     * Completes straight away if there are already newer changes.
+     *
+     * @param after The sequence number of the last change the client has seen.
+     * @param timeout How long to wait for a change before giving up.
+     * @return The retained changes after the given one, oldest first, or an empty list on timeout.
+     */
+    public Mono<List<MountainChange>> changesAfter(final long after, final Duration timeout) {
+        // subscribe to new changes before checking for existing ones, so none slips in between
+        return Flux.merge(changes.asFlux().filter(change -> change.seq() > after).map(MountainChange::seq),
+                        Mono.fromSupplier(() -> lastSeq).filter(seq -> seq > after))
+                .next()
+                .map(seq -> List.copyOf(recentChanges.tailMap(after, false).values()))
+                .timeout(timeout, Mono.just(List.of()));
+    }
+
+    /**
+     * Runs a change on the writer thread.
+     *
+     * @param change The change.
+     * @param <T> The response body type.
+     * @return The change's result, delivered once it has run.
+     */
+    private <T> Mono<ResponseEntity<T>> write(final Callable<ResponseEntity<T>> change) {
+        return Mono.fromCallable(change).subscribeOn(writer);
+    }
+
+    /**
+     * Numbers a change, keeps it for long-polling clients and sends it to streaming ones.
+     * Only called on the writer thread.
+     *
+     * @param type What happened.
+     * @param mountain The mountain it happened to.
+     */
+    private void publish(final MountainChange.Type type, final Mountain mountain) {
+        final MountainChange change = new MountainChange(lastSeq + 1, type, mountain);
+        recentChanges.put(change.seq(), change);
+        while (recentChanges.size() > retainedChanges) {
+            recentChanges.pollFirstEntry();
+        }
+        lastSeq = change.seq();
+        changes.tryEmitNext(change);
+    }
+
+    /**
+     * Copies a mountain so stored mountains are never changed after readers can see them.
+     *
+     * @param mountain The mountain to copy.
+     * @param id The ID to give the copy.
+     * @return The copy.
+     */
+    private static Mountain copyOf(final Mountain mountain, final int id) {
+        final Mountain copy = new Mountain(mountain.getName(), mountain.getAltitude(), mountain.getRange(),
+                mountain.getCountry(), mountain.getIsNorthern());
+        copy.setId(id);
+        return copy;
+    }
+}
@@ -0,0 +1,13 @@
+package org.example.mountainreactiveserver;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class MountainReactiveServerApplicationTests {
+
+    @Test
+    void contextLoads() {
+    }
+
+}
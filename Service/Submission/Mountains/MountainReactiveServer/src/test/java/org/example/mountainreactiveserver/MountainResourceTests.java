@@ -0,0 +1,57 @@
+package org.example.mountainreactiveserver;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "mountain.long-poll.timeout=PT0.2S")
+@AutoConfigureWebTestClient
+class MountainResourceTests {
+
+    @Autowired
+    private WebTestClient client;
+
+    @Test
+    void addedMountainsAreStreamedBackAsNewlineDelimitedJson() {
+        client.post().uri("/").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(new Mountain("Aconcagua", 6961, "Andes", "Argentina", false),
+                        new Mountain("Ojos del Salado", 6893, "Andes", "Argentina", false)))
+                .exchange()
+                .expectStatus().isOk();
+
+        Flux<Mountain> streamed = client.get().uri("/country/Argentina").accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Mountain.class).getResponseBody();
+        StepVerifier.create(streamed)
+                .expectNextMatches(mountain -> mountain.getName().equals("Aconcagua"))
+                .expectNextMatches(mountain -> mountain.getName().equals("Ojos del Salado"))
+                .verifyComplete();
+
+        client.get().uri("/country/Peru").exchange().expectStatus().isNoContent();
+    }
+
+    @Test
+    void longPollAnswersWithChangesOrTimesOut() {
+        client.post().uri("/").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(new Mountain("Huascaran", 6768, "Andes", "Peru", false)))
+                .exchange()
+                .expectStatus().isOk();
+
+        List<MountainChange> changes = client.get().uri("/changes/next?after=0")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MountainChange.class).returnResult().getResponseBody();
+        long latest = changes.get(changes.size() - 1).seq();
+
+        client.get().uri("/changes/next?after=" + latest).exchange().expectStatus().isNoContent();
+    }
+}
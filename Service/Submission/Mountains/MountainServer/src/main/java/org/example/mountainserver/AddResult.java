@@ -0,0 +1,24 @@
+package org.example.mountainserver;
+
+/**
+ * The outcome of adding a single mountain, returned in submission order from a POST.
+ *
+ * @param id The mountain's ID - newly generated if created, otherwise the ID of the stored mountain.
+ * @param status Whether the mountain was created, already existed, or clashed with a stored one.
+ * @author 2014459
+ * @version 1.0
+ */
+public record AddResult(int id, Status status) {
+
+    /**
+     * The per-item status of an add.
+     */
+    public enum Status {
+        /** The mountain was new and has been stored. */
+        CREATED,
+        /** An identical mountain was already stored. */
+        ALREADY_EXISTED,
+        /** A mountain with the same name, range and country but different details is already stored. */
+        CONFLICT
+    }
+}
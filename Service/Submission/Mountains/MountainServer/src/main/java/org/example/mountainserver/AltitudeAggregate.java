@@ -0,0 +1,20 @@
+package org.example.mountainserver;
+
+/**
+ * The counts and altitude figures for one group of mountains, as returned by the aggregates
+ * endpoint. The country and range are null when the figures are not grouped by them.
+ *
+ * @param country The group's country, or null.
+ * @param range The group's range, or null.
+ * @param count How many mountains the group has.
+ * @param northern How many of them are in the northern hemisphere.
+ * @param southern How many of them are in the southern hemisphere.
+ * @param minAltitude The lowest altitude.
+ * @param maxAltitude The highest altitude.
+ * @param meanAltitude The mean altitude.
+ * @author 2014459
+ * @version 1.0
+ */
+public record AltitudeAggregate(String country, String range, long count, long northern, long southern,
+                                int minAltitude, int maxAltitude, double meanAltitude) {
+}
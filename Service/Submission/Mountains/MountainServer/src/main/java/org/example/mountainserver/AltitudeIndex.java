@@ -0,0 +1,69 @@
+package org.example.mountainserver;
+
+import java.util.BitSet;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Ordered index from altitude to the IDs of the mountains that high, for range seeks.
+ * Like the secondary indexes, entries are only removed once no version of the mountain at that
+ * altitude is left, and lookups return candidates that the caller checks against its snapshot.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class AltitudeIndex {
+
+    private final ConcurrentSkipListMap<Integer, Set<Integer>> entries = new ConcurrentSkipListMap<>();
+
+    /**
+     * Adds a mountain's entry.
+     *
+     * @param id The mountain's ID.
+     * @param mountain The mountain's version.
+     */
+    public void add(final int id, final Mountain mountain) {
+        entries.computeIfAbsent(mountain.getAltitude(), altitude -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    /**
+     * Removes a mountain's entry for the altitude of one of its versions.
+     *
+     * @param id The mountain's ID.
+     * @param mountain The version whose altitude should no longer lead to the mountain.
+     */
+    public void remove(final int id, final Mountain mountain) {
+        entries.computeIfPresent(mountain.getAltitude(), (altitude, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * Gets the IDs of mountains higher than an altitude.
+     *
+     * @param altitude The altitude to seek past.
+     * @return The candidate IDs.
+     */
+    public BitSet above(final int altitude) {
+        final BitSet ids = new BitSet();
+        for (Set<Integer> matching : entries.tailMap(altitude, false).values()) {
+            for (int id : matching) {
+                ids.set(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Gets the entries higher than an altitude, highest first, for walking the mountains in
+     * altitude order. A mountain may have an entry at the altitude of each of its versions.
+     *
+     * @param altitude The altitude to stop above.
+     * @return A live view of the entries, from altitude to candidate IDs.
+     */
+    public NavigableMap<Integer, Set<Integer>> highestFirst(final int altitude) {
+        return entries.tailMap(altitude, false).descendingMap();
+    }
+}
@@ -0,0 +1,47 @@
+package org.example.mountainserver;
+
+import java.util.function.Function;
+
+/**
+ * The mountain fields that queries compare for equality, and so can be indexed and counted.
+ * @author 2014459
+ * @version 1.0
+ */
+public enum Column {
+    /** The mountain's country. */
+    COUNTRY(Mountain::getCountry, MountainQuery::country),
+    /** The mountain's range. */
+    RANGE(Mountain::getRange, MountainQuery::range),
+    /** The mountain's name. */
+    NAME(Mountain::getName, MountainQuery::name),
+    /** The mountain's hemisphere, as "true" for northern and "false" for southern. */
+    HEMISPHERE(mountain -> String.valueOf(mountain.getIsNorthern()), MountainQuery::hemisphere);
+
+    private final Function<Mountain, String> field;
+    private final Function<MountainQuery, String> criterion;
+
+    Column(final Function<Mountain, String> field, final Function<MountainQuery, String> criterion) {
+        this.field = field;
+        this.criterion = criterion;
+    }
+
+    /**
+     * Gets a mountain's value in this column.
+     *
+     * @param mountain The mountain.
+     * @return The value.
+     */
+    public String valueOf(final Mountain mountain) {
+        return field.apply(mountain);
+    }
+
+    /**
+     * Gets the value a query asks for in this column.
+     *
+     * @param query The query.
+     * @return The value, or null if the query does not filter on this column.
+     */
+    public String criterionOf(final MountainQuery query) {
+        return criterion.apply(query);
+    }
+}
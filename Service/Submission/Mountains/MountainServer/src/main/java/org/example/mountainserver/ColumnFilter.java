@@ -0,0 +1,36 @@
+package org.example.mountainserver;
+
+/**
+ * The part of a query that the scan kernels evaluate straight from the altitude and hemisphere
+ * columns. A null criterion matches every mountain.
+ *
+ * @param altitudeAbove Only match mountains higher than this.
+ * @param northern Only match mountains in the northern hemisphere if true, or the southern if false.
+ * @author 2014459
+ * @version 1.0
+ */
+public record ColumnFilter(Integer altitudeAbove, Boolean northern) {
+
+    /** Matches every mountain. */
+    public static final ColumnFilter NONE = new ColumnFilter(null, null);
+
+    /**
+     * Checks whether the filter leaves anything for the kernels to do.
+     *
+     * @return True if every mountain matches.
+     */
+    public boolean matchesAll() {
+        return altitudeAbove == null && northern == null;
+    }
+
+    /**
+     * Checks a single mountain against the filter.
+     *
+     * @param altitude The mountain's altitude.
+     * @param isNorthern Whether the mountain is in the northern hemisphere.
+     * @return True if the mountain matches.
+     */
+    public boolean test(final int altitude, final boolean isNorthern) {
+        return (altitudeAbove == null || altitude > altitudeAbove) && (northern == null || isNorthern == northern);
+    }
+}
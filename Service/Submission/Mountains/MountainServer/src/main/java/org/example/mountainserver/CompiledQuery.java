@@ -0,0 +1,19 @@
+package org.example.mountainserver;
+
+import java.util.function.Predicate;
+
+/**
+ * A filter query parsed, validated and compiled once, ready to test every mountain in a scan.
+ *
+ * @param filter Tests every criterion.
+ * @param columns The altitude and hemisphere criteria, for the scan kernels.
+ * @param otherColumns Tests every criterion except altitude and hemisphere.
+ * @author 2014459
+ * @version 1.0
+ */
+public record CompiledQuery(Predicate<Mountain> filter, ColumnFilter columns, Predicate<Mountain> otherColumns) {
+
+    /** Matches no mountain, for queries with criteria no mountain can meet. */
+    public static final CompiledQuery NOTHING = new CompiledQuery(mountain -> false, ColumnFilter.NONE,
+            mountain -> false);
+}
@@ -0,0 +1,50 @@
+package org.example.mountainserver;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A page of the mountains matching a filter query, with how many of all the matches have each
+ * value of the requested facets, such as each country or range.
+ *
+ * @param mountains The page of matching mountains, in the order they were added.
+ * @param total How many mountains matched in all.
+ * @param facets For each requested facet, how many matches have each of its values.
+ * @author 2014459
+ * @version 1.0
+ */
+public record FacetedMountains(List<Mountain> mountains, long total, Map<String, Map<String, Long>> facets) {
+
+    /**
+     * Pages a query's matches and counts their facets in a single pass over them.
+     *
+     * @param matches Every mountain the query matched, in the order they were added.
+     * @param facets The facets to count, by the name to report them under.
+     * @param offset How many matches to skip before the page, or null for none.
+     * @param limit The most mountains to return, or null for all of them.
+     * @return The page and the counts.
+     */
+    public static FacetedMountains of(final List<Mountain> matches, final Map<String, Column> facets,
+                                      final Integer offset, final Integer limit) {
+        final int start = offset == null ? 0 : offset;
+        final int available = Math.max(0, matches.size() - start);
+        final List<Mountain> page = new ArrayList<>(limit == null ? available : Math.min(limit, available));
+        final Map<String, Map<String, Long>> counts = new LinkedHashMap<>();
+        for (String facet : facets.keySet()) {
+            counts.put(facet, new TreeMap<>());
+        }
+        for (int i = 0; i < matches.size(); i++) {
+            final Mountain mountain = matches.get(i);
+            if (i >= start && (limit == null || page.size() < limit)) {
+                page.add(mountain);
+            }
+            for (Map.Entry<String, Column> facet : facets.entrySet()) {
+                counts.get(facet.getKey()).merge(facet.getValue().valueOf(mountain), 1L, Long::sum);
+            }
+        }
+        return new FacetedMountains(page, matches.size(), counts);
+    }
+}
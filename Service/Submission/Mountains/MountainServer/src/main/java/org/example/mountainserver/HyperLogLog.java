@@ -0,0 +1,114 @@
+package org.example.mountainserver;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * HyperLogLog sketch estimating how many distinct values have been added, in a fixed 2^precision
+ * bytes however many there are. Each value's hash picks a register by its top bits, which keeps
+ * the longest run of leading zeros seen in the rest; the registers' harmonic mean gives the
+ * estimate, with linear counting for small ones. The relative standard error is 1.04 / sqrt(2^precision).
+ * Values cannot be taken out again, so the estimate covers everything ever added.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class HyperLogLog {
+
+    private final int precision;
+    private final byte[] registers;
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param precision The number of hash bits that pick a register, from 4 to 16.
+     */
+    public HyperLogLog(final int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("Precision must be between 4 and 16");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param hash The value's 64-bit hash.
+     */
+    public void add(final long hash) {
+        final int register = (int) (hash >>> (Long.SIZE - precision));
+        final int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), Long.SIZE - precision) + 1;
+        lock.lock();
+        try {
+            if (rank > registers[register]) {
+                registers[register] = (byte) rank;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds every value another sketch of the same precision has seen.
+     *
+     * @param other The other sketch.
+     */
+    public void addAll(final HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Sketches have different precisions");
+        }
+        final byte[] theirs;
+        other.lock.lock();
+        try {
+            theirs = other.registers.clone();
+        } finally {
+            other.lock.unlock();
+        }
+        lock.lock();
+        try {
+            for (int i = 0; i < registers.length; i++) {
+                registers[i] = (byte) Math.max(registers[i], theirs[i]);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimates how many distinct values have been added.
+     *
+     * @return The estimate.
+     */
+    public long estimate() {
+        final int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        lock.lock();
+        try {
+            for (byte register : registers) {
+                sum += Math.scalb(1.0, -register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        final double alpha = 0.7213 / (1 + 1.079 / m);
+        final double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            return Math.round(m * Math.log(m / (double) zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Gets the relative standard error of the estimate.
+     *
+     * @return The error, as a fraction of the true count.
+     */
+    public double relativeStandardError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+}
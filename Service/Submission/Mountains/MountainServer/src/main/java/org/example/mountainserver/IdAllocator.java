@@ -0,0 +1,146 @@
+package org.example.mountainserver;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out mountain IDs in blocks. Each partition reserves a block with a single atomic add and
+ * then numbers its mountains from it without touching shared state, so partitions only meet on the
+ * counter once per block. The end of the highest reserved block is written to a file before any
+ * ID in it is used, and a restart carries on from there, so IDs are never reused. IDs reserved but
+ * not used before a restart are skipped.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class IdAllocator {
+
+    private static final int FIRST_ID = 1;
+
+    private final int blockSize;
+    private final Path highWaterFile;
+    private final AtomicLong reserved;
+    private final Lock persistLock = new ReentrantLock();
+    private long persisted;
+
+    /**
+     * Creates the allocator, resuming after the high-water mark saved by the last run.
+     *
+     * @param blockSize How many IDs a partition reserves at a time.
+     * @param highWaterFile Where the high-water mark is kept, or blank to keep it in memory only.
+     */
+    public IdAllocator(@Value("${mountain.ids.block-size:1024}") final int blockSize,
+                       @Value("${mountain.ids.high-water-file:}") final String highWaterFile) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("mountain.ids.block-size must be positive");
+        }
+        this.blockSize = blockSize;
+        this.highWaterFile = highWaterFile.isBlank() ? null : Path.of(highWaterFile);
+        this.persisted = readHighWater();
+        this.reserved = new AtomicLong(persisted);
+    }
+
+    /**
+     * Creates a partition with its own block of IDs. A partition is not thread safe, so each one
+     * must only be used by one writer at a time.
+     *
+     * @return The new partition.
+     */
+    public Partition newPartition() {
+        return new Partition();
+    }
+
+    /**
+     * Gets the end of the highest block reserved so far.
+     *
+     * @return The highest ID that may have been handed out.
+     */
+    public long highWater() {
+        return reserved.get();
+    }
+
+    /**
+     * Reserves the next block of IDs and saves the new high-water mark before returning it.
+     *
+     * @return The last ID of the block; the block starts blockSize below it.
+     */
+    private long reserveBlock() {
+        final long end = reserved.addAndGet(blockSize);
+        if (end > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Mountain IDs exhausted");
+        }
+        persist(end);
+        return end;
+    }
+
+    private void persist(final long end) {
+        if (highWaterFile == null) {
+            return;
+        }
+        // a lock rather than a monitor, so a virtual thread writing the file does not pin its carrier
+        persistLock.lock();
+        try {
+            if (end <= persisted) {
+                return;
+            }
+            try {
+                final Path parent = highWaterFile.toAbsolutePath().getParent();
+                Files.createDirectories(parent);
+                final Path temp = Files.createTempFile(parent, highWaterFile.getFileName().toString(), ".tmp");
+                Files.writeString(temp, Long.toString(end));
+                Files.move(temp, highWaterFile, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not save the mountain ID high-water mark", e);
+            }
+            persisted = end;
+        } finally {
+            persistLock.unlock();
+        }
+    }
+
+    private long readHighWater() {
+        if (highWaterFile == null || !Files.exists(highWaterFile)) {
+            return FIRST_ID - 1;
+        }
+        try {
+            return Math.max(FIRST_ID - 1, Long.parseLong(Files.readString(highWaterFile).strip()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the mountain ID high-water mark", e);
+        }
+    }
+
+    /**
+     * A writer's current block of IDs.
+     */
+    public final class Partition {
+
+        private long next;
+        private long end;
+
+        private Partition() {
+        }
+
+        /**
+         * Gets the next ID, reserving a new block once this one is used up.
+         *
+         * @return The ID.
+         */
+        public int next() {
+            if (next == end) {
+                end = reserveBlock();
+                next = end - blockSize;
+            }
+            return (int) ++next;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.example.mountainserver;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, expiring table of recent idempotency keys and the responses they produced.
+ * A retried request with the same key gets the stored response back without running again,
+ * and a retry that arrives while the original is still running waits for its result. A key is
+ * tied to the fingerprint of the request that first used it, so reusing it for a different
+ * operation or a different body is rejected rather than answered with the first response. Only
+ * final outcomes are kept: a server error such as 503 from a full write queue is forgotten, so a
+ * retry with the same key runs the operation again.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class IdempotencyCache {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final Lock entriesLock = new ReentrantLock();
+
+    /**
+     * Creates the cache.
+     *
+     * @param maxEntries The most keys to remember; the oldest are dropped first.
+     * @param ttl How long a key is remembered for.
+     */
+    public IdempotencyCache(@Value("${mountain.idempotency.max-entries:10000}") final int maxEntries,
+                            @Value("${mountain.idempotency.ttl:PT1H}") final Duration ttl) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    /**
+     * Runs the action once per key, returning the stored response for any repeat of that key.
+     *
+     * @param key The client's idempotency key, or null to run the action without caching.
+     * @param fingerprint Identifies the operation, so a key reused for a different one is rejected.
+     * @param action The operation to run.
+     * @param <T> The response body type.
+     * @return The response of the first request made with this key that did not fail with a server
+     * error, or 422 if the key was used for a different operation.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ResponseEntity<T> execute(final String key, final String fingerprint,
+                                         final Supplier<ResponseEntity<T>> action) {
+        if (key == null) {
+            return action.get();
+        }
+
+        final Entry created = new Entry(fingerprint, System.currentTimeMillis() + ttlMillis,
+                new CompletableFuture<>());
+        final Entry existing;
+        entriesLock.lock();
+        try {
+            evictExpired(System.currentTimeMillis());
+            existing = entries.get(key);
+            if (existing == null) {
+                entries.put(key, created);
+                if (entries.size() > maxEntries) {
+                    Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        } finally {
+            entriesLock.unlock();
+        }
+
+        if (existing != null) {
+            if (!existing.fingerprint().equals(fingerprint)) {
+                return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+            }
+            final ResponseEntity<T> response;
+            try {
+                response = (ResponseEntity<T>) existing.response().join();
+            } catch (CompletionException e) {
+                return execute(key, fingerprint, action);
+            }
+            // the first request's entry is already gone, so this runs the operation as a retry would
+            return response.getStatusCode().is5xxServerError() ? execute(key, fingerprint, action) : response;
+        }
+
+        try {
+            final ResponseEntity<T> response = action.get();
+            if (response.getStatusCode().is5xxServerError()) {
+                forget(key, created);
+            }
+            created.response().complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            forget(key, created);
+            created.response().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Fingerprints a request by its operation and a SHA-256 hash of its serialized body.
+     *
+     * @param operation The method and route, with any path variables that pick what is changed.
+     * @param body The request body, serialized.
+     * @return The fingerprint.
+     */
+    public static String fingerprint(final String operation, final byte[] body) {
+        try {
+            return operation + " " + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Drops a key whose first request did not reach a final outcome, unless it has been replaced.
+     *
+     * @param key The key.
+     * @param entry The entry made for the request.
+     */
+    private void forget(final String key, final Entry entry) {
+        entriesLock.lock();
+        try {
+            entries.remove(key, entry);
+        } finally {
+            entriesLock.unlock();
+        }
+    }
+
+    /**
+     * Drops keys whose time to live has passed - entries are in insertion order, so
+     * this stops at the first one still alive.
+     *
+     * @param now The current time in milliseconds.
+     */
+    private void evictExpired(final long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && iterator.next().expiresAt() <= now) {
+            iterator.remove();
+        }
+    }
+
+    /**
+     * A remembered key.
+     *
+     * @param fingerprint The operation the key was first used for.
+     * @param expiresAt When the key is forgotten, in milliseconds.
+     * @param response The response, completed once the first request finishes.
+     */
+    private record Entry(String fingerprint, long expiresAt, CompletableFuture<ResponseEntity<?>> response) {
+    }
+}
@@ -0,0 +1,165 @@
+package org.example.mountainserver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts and altitude figures for the latest version of every mountain, per (country, range),
+ * kept up to date on each write so they can be read without a scan. Each group keeps its
+ * altitudes as a multiset, so its lowest and highest stay exact as mountains are changed or
+ * deleted. Coarser groupings are rolled up from the (country, range) groups when read, which
+ * costs one step per group however many mountains there are.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class MountainAggregates {
+
+    private final Map<GroupKey, Group> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Counts a mountain's latest version in and the version it replaces out.
+     *
+     * @param before The version it replaces, or null if it is new.
+     * @param after The new version, or null if the mountain was deleted.
+     */
+    public void changed(final Mountain before, final Mountain after) {
+        if (before != null) {
+            groups.computeIfAbsent(GroupKey.of(before), key -> new Group()).remove(before);
+        }
+        if (after != null) {
+            groups.computeIfAbsent(GroupKey.of(after), key -> new Group()).add(after);
+        }
+    }
+
+    /**
+     * Gets the summary of every non-empty (country, range) group.
+     *
+     * @return The summaries, by group.
+     */
+    public Map<GroupKey, Summary> summaries() {
+        final Map<GroupKey, Summary> summaries = new TreeMap<>(GroupKey.ORDER);
+        groups.forEach((key, group) -> {
+            final Summary summary = group.summary();
+            if (summary != null) {
+                summaries.put(key, summary);
+            }
+        });
+        return summaries;
+    }
+
+    /**
+     * Rolls group summaries up to a coarser grouping.
+     *
+     * @param summaries The (country, range) summaries, possibly merged from several stores.
+     * @param groupBy The columns to group by: country, range, both, or neither for one overall row.
+     * @return One row per group, in country then range order.
+     */
+    public static List<AltitudeAggregate> rollUp(final Map<GroupKey, Summary> summaries,
+                                                 final Set<Column> groupBy) {
+        final Map<GroupKey, Summary> rolled = new TreeMap<>(GroupKey.ORDER);
+        summaries.forEach((key, summary) -> rolled.merge(new GroupKey(
+                groupBy.contains(Column.COUNTRY) ? key.country() : null,
+                groupBy.contains(Column.RANGE) ? key.range() : null), summary, Summary::plus));
+        final List<AltitudeAggregate> rows = new ArrayList<>(rolled.size());
+        rolled.forEach((key, summary) -> rows.add(new AltitudeAggregate(key.country(), key.range(),
+                summary.count(), summary.northern(), summary.count() - summary.northern(),
+                summary.minAltitude(), summary.maxAltitude(), summary.totalAltitude() / (double) summary.count())));
+        return rows;
+    }
+
+    /**
+     * A (country, range) group, or a coarser one with null for the columns not grouped by.
+     *
+     * @param country The country, or null.
+     * @param range The range, or null.
+     */
+    public record GroupKey(String country, String range) {
+
+        private static final Comparator<GroupKey> ORDER = Comparator
+                .comparing(GroupKey::country, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(GroupKey::range, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+        private static GroupKey of(final Mountain mountain) {
+            return new GroupKey(mountain.getCountry(), mountain.getRange());
+        }
+    }
+
+    /**
+     * A group's figures, which can be added to another group's.
+     *
+     * @param count How many mountains the group has.
+     * @param northern How many of them are in the northern hemisphere.
+     * @param totalAltitude Their altitudes added up.
+     * @param minAltitude The lowest altitude.
+     * @param maxAltitude The highest altitude.
+     */
+    public record Summary(long count, long northern, long totalAltitude, int minAltitude, int maxAltitude) {
+
+        /**
+         * Adds another group's figures to these.
+         *
+         * @param other The other group's figures.
+         * @return The figures for both groups together.
+         */
+        public Summary plus(final Summary other) {
+            return new Summary(count + other.count, northern + other.northern, totalAltitude + other.totalAltitude,
+                    Math.min(minAltitude, other.minAltitude), Math.max(maxAltitude, other.maxAltitude));
+        }
+    }
+
+    /**
+     * One (country, range) group's running figures. Empty groups are kept, since a writer may be
+     * about to add to one, and skipped when read.
+     */
+    private static final class Group {
+
+        private final TreeMap<Integer, Integer> altitudes = new TreeMap<>();
+        private final Lock lock = new ReentrantLock();
+        private long count;
+        private long northern;
+        private long totalAltitude;
+
+        private void add(final Mountain mountain) {
+            lock.lock();
+            try {
+                count++;
+                northern += mountain.getIsNorthern() ? 1 : 0;
+                totalAltitude += mountain.getAltitude();
+                altitudes.merge(mountain.getAltitude(), 1, Integer::sum);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove(final Mountain mountain) {
+            lock.lock();
+            try {
+                count--;
+                northern -= mountain.getIsNorthern() ? 1 : 0;
+                totalAltitude -= mountain.getAltitude();
+                altitudes.computeIfPresent(mountain.getAltitude(), (altitude, same) -> same == 1 ? null : same - 1);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Summary summary() {
+            lock.lock();
+            try {
+                if (count == 0) {
+                    return null;
+                }
+                return new Summary(count, northern, totalAltitude, altitudes.firstKey(), altitudes.lastKey());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.mountainserver;
+
+import java.util.List;
+
+/**
+ * A read-only, column-per-field copy of the mountains one snapshot can see, laid out in primitive
+ * arrays so the scan kernels can compare many altitudes at once.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class MountainColumns {
+
+    private final long seq;
+    private final Mountain[] rows;
+    private final int[] altitudes;
+    private final boolean[] northern;
+
+    /**
+     * Copies the mountains into columns.
+     *
+     * @param seq The sequence number of the snapshot the mountains came from.
+     * @param mountains The mountains, in the order queries return them.
+     */
+    public MountainColumns(final long seq, final List<Mountain> mountains) {
+        this.seq = seq;
+        this.rows = mountains.toArray(new Mountain[0]);
+        this.altitudes = new int[rows.length];
+        this.northern = new boolean[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            altitudes[i] = rows[i].getAltitude();
+            northern[i] = rows[i].getIsNorthern();
+        }
+    }
+
+    /**
+     * Gets the sequence number of the snapshot the columns were copied from.
+     *
+     * @return The snapshot's sequence number.
+     */
+    public long seq() {
+        return seq;
+    }
+
+    /**
+     * Gets the number of rows.
+     *
+     * @return The number of mountains in the columns.
+     */
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * Gets one row.
+     *
+     * @param row The row's position.
+     * @return The mountain in that row.
+     */
+    public Mountain row(final int row) {
+        return rows[row];
+    }
+
+    int[] altitudes() {
+        return altitudes;
+    }
+
+    boolean[] northern() {
+        return northern;
+    }
+}
@@ -0,0 +1,260 @@
+package org.example.mountainserver;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+
+/**
+ * The multi-version store's secondary indexes and statistics, kept in step with its writes.
+ * A write adds index entries for the new version before it is published, updates the
+ * statistics, aggregates and name trie to describe the latest versions, and adds the version to
+ * the sketches, which the store rebuilds from the latest versions once they have gone stale.
+ * Entries for a version's key are only removed once the collector has dropped every
+ * version with that key, so indexes always lead to everything an open snapshot can see. Bloom
+ * filters over the (country, range) and (country, range, name) keys and over the IDs ever written
+ * let lookups for mountains that were never stored be answered without reading the store; like
+ * the indexes, they cover every version a snapshot can see. Two more filters hold the IDs and keys
+ * that have since lost their mountains, so a lookup that finds nothing can be told apart from a
+ * false positive.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class MountainIndexes {
+
+    private static final int BLOOM_INITIAL_CAPACITY = 1 << 16;
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final TableStatistics statistics = new TableStatistics();
+    private final MountainAggregates aggregates = new MountainAggregates();
+    private final MountainSketches sketches = new MountainSketches();
+    private final NameTrie names = new NameTrie();
+    private final AltitudeIndex altitudeIndex = new AltitudeIndex();
+    private final List<SecondaryIndex> secondaryIndexes = new CopyOnWriteArrayList<>();
+    private final ScalableBloomFilter keyFilter =
+            new ScalableBloomFilter(BLOOM_INITIAL_CAPACITY, BLOOM_FALSE_POSITIVE_RATE);
+    private final ScalableBloomFilter idFilter =
+            new ScalableBloomFilter(BLOOM_INITIAL_CAPACITY, BLOOM_FALSE_POSITIVE_RATE);
+    private final ScalableBloomFilter removedKeyFilter =
+            new ScalableBloomFilter(BLOOM_INITIAL_CAPACITY, BLOOM_FALSE_POSITIVE_RATE);
+    private final ScalableBloomFilter removedIdFilter =
+            new ScalableBloomFilter(BLOOM_INITIAL_CAPACITY, BLOOM_FALSE_POSITIVE_RATE);
+
+    /**
+     * Creates the indexes, starting with the (country, range) index the filter routes are built around.
+     */
+    public MountainIndexes() {
+        secondaryIndexes.add(new SecondaryIndex(List.of(Column.COUNTRY, Column.RANGE), false));
+    }
+
+    /**
+     * Gets the statistics on the latest versions.
+     *
+     * @return The statistics.
+     */
+    public TableStatistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * Gets the counts and altitude figures per (country, range) of the latest versions.
+     *
+     * @return The aggregates.
+     */
+    public MountainAggregates aggregates() {
+        return aggregates;
+    }
+
+    /**
+     * Gets the sketches of the versions written since they were last rebuilt.
+     *
+     * @return The sketches.
+     */
+    public MountainSketches sketches() {
+        return sketches;
+    }
+
+    /**
+     * Gets the name trie over the latest versions, for typeahead.
+     *
+     * @return The name trie.
+     */
+    public NameTrie names() {
+        return names;
+    }
+
+    /**
+     * Gets the altitude index.
+     *
+     * @return The altitude index.
+     */
+    public AltitudeIndex altitudeIndex() {
+        return altitudeIndex;
+    }
+
+    /**
+     * Gets the secondary indexes.
+     *
+     * @return The secondary indexes.
+     */
+    public List<SecondaryIndex> secondaryIndexes() {
+        return secondaryIndexes;
+    }
+
+    /**
+     * Gets the bloom filter over the (country, range) and (country, range, name) keys ever written.
+     *
+     * @return The filter, keyed by {@link #keyHash(String, String, String)}.
+     */
+    public ScalableBloomFilter keyFilter() {
+        return keyFilter;
+    }
+
+    /**
+     * Gets the bloom filter over the IDs ever written.
+     *
+     * @return The filter, keyed by {@link ScalableBloomFilter#hash(long)}.
+     */
+    public ScalableBloomFilter idFilter() {
+        return idFilter;
+    }
+
+    /**
+     * Gets the bloom filter over the (country, range) and (country, range, name) keys some mountain
+     * has been deleted or moved away from.
+     *
+     * @return The filter, keyed by {@link #keyHash(String, String, String)}.
+     */
+    public ScalableBloomFilter removedKeyFilter() {
+        return removedKeyFilter;
+    }
+
+    /**
+     * Gets the bloom filter over the IDs of deleted mountains.
+     *
+     * @return The filter, keyed by {@link ScalableBloomFilter#hash(long)}.
+     */
+    public ScalableBloomFilter removedIdFilter() {
+        return removedIdFilter;
+    }
+
+    /**
+     * Hashes a (country, range) or (country, range, name) key for the key filter.
+     *
+     * @param country The country.
+     * @param range The range.
+     * @param name The name, or null for the (country, range) key.
+     * @return The hash.
+     */
+    public static long keyHash(final String country, final String range, final String name) {
+        final StringBuilder key = new StringBuilder(country).append(KEY_SEPARATOR).append(range);
+        if (name != null) {
+            key.append(KEY_SEPARATOR).append(name);
+        }
+        return ScalableBloomFilter.hash(key);
+    }
+
+    /**
+     * Starts maintaining an index. Writes keep it up to date from now on; the caller fills it with
+     * the existing versions and then marks it ready.
+     *
+     * @param index The new, empty index.
+     */
+    void register(final SecondaryIndex index) {
+        secondaryIndexes.add(index);
+    }
+
+    /**
+     * Stops maintaining an index and frees its entries.
+     *
+     * @param index The index to drop.
+     */
+    void drop(final SecondaryIndex index) {
+        secondaryIndexes.remove(index);
+    }
+
+    /**
+     * Records a new version of a mountain. Call before the version is published.
+     *
+     * @param id The mountain's ID.
+     * @param before The version it replaces, or null if it is new.
+     * @param after The new version, or null if the mountain was deleted.
+     */
+    void changed(final int id, final Mountain before, final Mountain after) {
+        aggregates.changed(before, after);
+        sketches.written(before, after);
+        names.changed(before, after);
+        if (before != null) {
+            statistics.remove(before);
+            removed(id, before, after);
+        }
+        if (after != null) {
+            statistics.add(after);
+            idFilter.add(ScalableBloomFilter.hash(id));
+            keyFilter.add(keyHash(after.getCountry(), after.getRange(), null));
+            keyFilter.add(keyHash(after.getCountry(), after.getRange(), after.getName()));
+            altitudeIndex.add(id, after);
+            for (SecondaryIndex index : secondaryIndexes) {
+                index.add(id, after);
+            }
+        }
+    }
+
+    /**
+     * Records the ID and keys a mountain no longer has after a change.
+     *
+     * @param id The mountain's ID.
+     * @param before The version replaced.
+     * @param after The new version, or null if the mountain was deleted.
+     */
+    private void removed(final int id, final Mountain before, final Mountain after) {
+        if (after == null) {
+            removedIdFilter.add(ScalableBloomFilter.hash(id));
+        }
+        if (after == null || !after.getCountry().equals(before.getCountry())
+                || !after.getRange().equals(before.getRange())) {
+            removedKeyFilter.add(keyHash(before.getCountry(), before.getRange(), null));
+        }
+        if (after == null || !after.equals(before)) {
+            removedKeyFilter.add(keyHash(before.getCountry(), before.getRange(), before.getName()));
+        }
+    }
+
+    /**
+     * Removes the entries for a version the collector has dropped, unless a version still in the
+     * store has the same key. A writer may install such a version at any moment, so the remaining
+     * versions are checked again after each removal and the entry put back if one has appeared.
+     *
+     * @param id The mountain's ID.
+     * @param dropped The dropped version.
+     * @param remaining Gives the mountain's versions still in the store, newest first.
+     */
+    void collected(final int id, final Mountain dropped, final Supplier<List<Mountain>> remaining) {
+        if (noneMatch(remaining.get(), dropped, (a, b) -> a.getAltitude() == b.getAltitude())) {
+            altitudeIndex.remove(id, dropped);
+            if (!noneMatch(remaining.get(), dropped, (a, b) -> a.getAltitude() == b.getAltitude())) {
+                altitudeIndex.add(id, dropped);
+            }
+        }
+        for (SecondaryIndex index : secondaryIndexes) {
+            if (noneMatch(remaining.get(), dropped, index::sameKey)) {
+                index.remove(id, dropped);
+                if (!noneMatch(remaining.get(), dropped, index::sameKey)) {
+                    index.add(id, dropped);
+                }
+            }
+        }
+    }
+
+    private static boolean noneMatch(final List<Mountain> versions, final Mountain dropped,
+                                     final BiPredicate<Mountain, Mountain> sameKey) {
+        for (Mountain version : versions) {
+            if (version != null && sameKey.test(version, dropped)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,20 @@
+package org.example.mountainserver;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A single filter spec in a batch query. Takes the same criteria as the GET filter routes,
+ * where a null criterion matches every mountain.
+ *
+ * @param country The country filter.
+ * @param range The range filter.
+ * @param name The name filter.
+ * @param id The ID filter.
+ * @param hemisphere The hemisphere filter.
+ * @param altitude The altitude filter.
+ * @author 2014459
+ * @version 1.0
+ */
+public record MountainQuery(String country, String range, String name, String id,
+                            @JsonProperty("northern-hemisphere") String hemisphere, String altitude) {
+}
@@ -1,5 +1,8 @@
 package org.example.mountainserver;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -9,76 +12,116 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * REST controller for managing mountains.
  * Provides endpoints for adding, getting, updating and deleting mountains.
+ * The multi-version store answers reads on the request thread, so its responses are returned
+ * as they are; the sharded store answers on its shard threads, so its responses are returned
+ * in a DeferredResult. The read routes that serve both are declared to return Object, and
+ * Spring handles whichever of the two comes back.
  * @author 2014459
  * @version 1.0
  */
 @RestController
 public class MountainResource {
 
-    private static final int FIRST_ID = 1;
+    private static final int MAX_BATCH_QUERIES = 100;
+    private static final int MAX_TOP_K = 1000;
+    private static final List<Double> DEFAULT_QUANTILES = List.of(0.25, 0.5, 0.75, 0.9, 0.99);
+    private static final Map<String, Column> FACETS = Map.of("country", Column.COUNTRY, "range", Column.RANGE,
+            "northern-hemisphere", Column.HEMISPHERE);
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final String SNAPSHOT_SEQUENCE = "Snapshot-Sequence";
+    private static final String ANY_VERSION = "*";
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    private final Lock readLock = lock.readLock();
-    private final Lock writeLock = lock.writeLock();
+    private final MountainStore store;
+    private final ShardedMountainStore shardedStore;
+    private final MutationQueue mutationQueue;
+    private final IdempotencyCache idempotencyCache;
+    private final QueryCompiler queryCompiler;
+    private final QueryPlanner queryPlanner;
+    private final WorkloadTracker workloadTracker;
+    private final NegativeLookupFilter negativeLookupFilter;
+    private final ObjectMapper objectMapper;
 
-    private final ArrayList<Mountain> mountainList = new ArrayList<>();
-    private int nextId = FIRST_ID;
+    /**
+     * Creates the controller.
+     *
+     * @param store The store holding the mountains.
+     * @param shardedStore The store used instead when the sharded mode is enabled.
+     * @param mutationQueue The queue used for changes when the asynchronous write mode is enabled.
+     * @param idempotencyCache The table of recent idempotency keys used by the mutating endpoints.
+     * @param queryCompiler Compiles the filtering routes' criteria into predicates.
+     * @param queryPlanner Picks how the filtering routes find their mountains.
+     * @param workloadTracker Records the filtering routes' queries so indexes can follow them.
+     * @param negativeLookupFilter Answers filtering routes that cannot match without reading the store.
+     * @param objectMapper Serializes request bodies for their idempotency fingerprints.
+     */
+    public MountainResource(final MountainStore store, final ShardedMountainStore shardedStore,
+                            final MutationQueue mutationQueue, final IdempotencyCache idempotencyCache,
+                            final QueryCompiler queryCompiler, final QueryPlanner queryPlanner,
+                            final WorkloadTracker workloadTracker,
+                            final NegativeLookupFilter negativeLookupFilter, final ObjectMapper objectMapper) {
+        this.store = store;
+        this.shardedStore = shardedStore;
+        this.mutationQueue = mutationQueue;
+        this.idempotencyCache = idempotencyCache;
+        this.queryCompiler = queryCompiler;
+        this.queryPlanner = queryPlanner;
+        this.workloadTracker = workloadTracker;
+        this.negativeLookupFilter = negativeLookupFilter;
+        this.objectMapper = objectMapper;
+    }
 
     /**
-     * Adds a list of mountains.
+     * Adds a list of mountains. Each mountain is handled on its own, so new mountains
+     * are stored even if others in the batch clash with existing ones.
      *
      * @param mountains The list of mountains to add.
-     * @return A ResponseEntity with the appropriate status code.
+     * @param idempotencyKey Optional key that makes retries return the original result.
+     * @return A ResponseEntity with the result of each mountain, in the order submitted,
+     * and the appropriate status code.
      */
-    @PostMapping(value = "/", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Void> addMountains(@RequestBody final List<Mountain> mountains) {
-
-        try {
-            writeLock.lock();
-            if (mountains.isEmpty()) {
-                return ResponseEntity.badRequest().build();
-            } else if (!Collections.disjoint(mountainList, mountains)) {
-                return ResponseEntity.status(HttpStatus.CONFLICT).build();
-            } else {
-                for (Mountain mountain : mountains) {
-                    boolean mountainExists = mountainList.stream()
-                            .anyMatch(m -> m.getName().equals(mountain.getName())
-                                    && m.getAltitude() == mountain.getAltitude()
-                                    && m.getRange().equals(mountain.getRange())
-                                    && m.getCountry().equals(mountain.getCountry())
-                                    && m.getIsNorthern() == mountain.getIsNorthern());
-
-                    if (!mountainExists) {
-                        mountain.setId(nextId++);
-                        mountainList.add(mountain);
-                    }
-                }
-                return ResponseEntity.ok().build();
-            }
+    @PostMapping(value = "/", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<AddResult>> addMountains(
+            @RequestBody final List<Mountain> mountains,
+            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) final String idempotencyKey) {
 
-        } finally {
-            writeLock.unlock();
+        if (mountains.isEmpty()) {
+            return ResponseEntity.badRequest().build();
         }
+
+        return idempotencyCache.execute(idempotencyKey, fingerprint("POST /", mountains),
+                () -> write(new Mutation.Add(mountains)));
     }
 
 
     /**
-     * Gets mountains based on the given criteria.
+     * Gets mountains based on the given criteria, using the access path the planner
+     * estimates is cheapest.
      *
      * @param country The mountain's country.
      * @param range The mountain's range.
@@ -86,124 +129,700 @@ public class MountainResource {
      * @param id The mountain's id.
      * @param hemisphere The hemisphere filter.
      * @param altitude The altitude filter.
-     * @return A ResponseEntity with the list of filtered mountains
-     * or an appropriate status code.
+     * @param asOf Optional commit sequence number to read as of, taken from the Snapshot-Sequence
+     * header of an earlier response, for consistent paging and time-travel reads.
+     * @return A ResponseEntity with the list of filtered mountains and the sequence number read as of,
+     * plus the mountain's version as an ETag when a single mountain is looked up by ID or name,
+     * or an appropriate status code. The sharded mode has no sequence numbers, so as-of is not
+     * supported there, and a query that takes longer than the deadline gets 504. In the sharded
+     * mode the response comes in a DeferredResult, set once every shard has answered.
      */
     @GetMapping(value = {"/", "country/{country}",
             "country/{country}/range/{range}",
             "country/{country}/range/{range}/name/{name}", "id/{id}"
     },
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Mountain>> getMountains(
+    public Object getMountains(
             @PathVariable(name = "country", required = false) final String country,
             @PathVariable(name = "range", required = false) final String range,
             @PathVariable(name = "name", required = false) final String name,
             @PathVariable(name = "id", required = false) final String id,
             @RequestParam(name = "northern-hemisphere", required = false) final String hemisphere,
-            @RequestParam(name = "altitude", required = false) String altitude) {
+            @RequestParam(name = "altitude", required = false) String altitude,
+            @RequestParam(name = "as-of", required = false) final Long asOf) {
 
-        if (notValidMountain(country, range, name, hemisphere, altitude)) {
+        if (notValidMountain(country, range, name, hemisphere, altitude) || notValidId(id)) {
             return ResponseEntity.ok(Collections.emptyList());
         }
+        final MountainQuery criteria = new MountainQuery(country, range, name, id, hemisphere, altitude);
+        final CompiledQuery query = queryCompiler.compile(criteria);
 
-        try {
-            readLock.lock();
-            final List<Mountain> filteredList = filterList(country, range, name, id, hemisphere, altitude);
+        if (shardedStore.isEnabled()) {
+            if (asOf != null) {
+                return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+            }
+            return whenDone(shardedStore.queryAll(List.of(query.filter())), results -> {
+                final List<ShardedMountainStore.Stored> matches = results.get(0);
+                if (matches.isEmpty()) {
+                    return ResponseEntity.noContent().build();
+                } else if ((id != null || name != null) && matches.size() == 1) {
+                    return ResponseEntity.ok().eTag(String.valueOf(matches.get(0).version()))
+                            .body(mountainsOf(matches));
+                } else {
+                    return ResponseEntity.ok(mountainsOf(matches));
+                }
+            });
+        }
+
+        if (asOf == null) {
+            // read first: every key written up to this commit is already in the filters
+            final long latest = store.committedSeq();
+            if (negativeLookupFilter.definitelyAbsent(criteria)) {
+                return ResponseEntity.noContent().header(SNAPSHOT_SEQUENCE, String.valueOf(latest)).build();
+            }
+        }
+        final Optional<MountainStore.Snapshot> snapshot = openSnapshot(asOf);
+        if (snapshot.isEmpty()) {
+            return snapshotUnavailable(asOf);
+        }
+        try (MountainStore.Snapshot readView = snapshot.get()) {
+            final long started = System.nanoTime();
+            final QueryPlan.Execution execution = queryPlanner.plan(criteria, query).execute(readView);
+            workloadTracker.record(criteria, execution, System.nanoTime() - started);
+            final List<Mountain> filteredList = execution.mountains();
+            negativeLookupFilter.confirm(criteria, !filteredList.isEmpty());
             if (filteredList.isEmpty()) {
-                return ResponseEntity.noContent().build();
+                return ResponseEntity.noContent().header(SNAPSHOT_SEQUENCE, String.valueOf(readView.seq()))
+                        .build();
+            } else if ((id != null || name != null) && filteredList.size() == 1) {
+                return ResponseEntity.ok().header(SNAPSHOT_SEQUENCE, String.valueOf(readView.seq()))
+                        .eTag(String.valueOf(readView.versionOf(filteredList.get(0).getId())))
+                        .body(new ArrayList<>(filteredList));
+            } else {
+                return ResponseEntity.ok().header(SNAPSHOT_SEQUENCE, String.valueOf(readView.seq()))
+                        .body(new ArrayList<>(filteredList));
+            }
+        }
+    }
+
+    /**
+     * Explains how the planner runs a filter query: runs it, and returns the chosen access path
+     * and the others considered, the estimated and actual number of matches and of mountains
+     * checked, and how long planning, index access and filtering took.
+     *
+     * @param country The mountain's country.
+     * @param range The mountain's range.
+     * @param name The mountain's name.
+     * @param id The mountain's id.
+     * @param hemisphere The hemisphere filter.
+     * @param altitude The altitude filter.
+     * @param asOf Optional commit sequence number to read as of.
+     * @return A ResponseEntity with the explanation, or an appropriate status code. The sharded
+     * mode has no planner, so explain is not supported there.
+     */
+    @GetMapping(value = {"/", "country/{country}",
+            "country/{country}/range/{range}",
+            "country/{country}/range/{range}/name/{name}", "id/{id}"
+    },
+            params = "explain=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<QueryPlan.Explanation> explainMountains(
+            @PathVariable(name = "country", required = false) final String country,
+            @PathVariable(name = "range", required = false) final String range,
+            @PathVariable(name = "name", required = false) final String name,
+            @PathVariable(name = "id", required = false) final String id,
+            @RequestParam(name = "northern-hemisphere", required = false) final String hemisphere,
+            @RequestParam(name = "altitude", required = false) final String altitude,
+            @RequestParam(name = "as-of", required = false) final Long asOf) {
+
+        if (shardedStore.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+        }
+        if (notValidMountain(country, range, name, hemisphere, altitude) || notValidId(id)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        final Optional<MountainStore.Snapshot> snapshot = openSnapshot(asOf);
+        if (snapshot.isEmpty()) {
+            return snapshotUnavailable(asOf);
+        }
+        try (MountainStore.Snapshot readView = snapshot.get()) {
+            final long start = System.nanoTime();
+            final MountainQuery criteria = new MountainQuery(country, range, name, id, hemisphere, altitude);
+            final QueryPlan plan = queryPlanner.plan(criteria, queryCompiler.compile(criteria));
+            final long planNanos = System.nanoTime() - start;
+            return ResponseEntity.ok().header(SNAPSHOT_SEQUENCE, String.valueOf(readView.seq()))
+                    .body(plan.explain(plan.execute(readView), planNanos));
+        }
+    }
+
+    /**
+     * Gets mountains based on the given criteria, as for the plain filter routes, together with
+     * how many of the matches have each country, range or hemisphere, so a client showing both
+     * needs no extra queries. The counts are taken in the same pass over the matches that pages
+     * them, from the one snapshot the query ran against, so they always add up to the total.
+     * Criteria that cannot match anything give an empty page, as on the plain filter routes.
+     *
+     * @param country The mountain's country.
+     * @param range The mountain's range.
+     * @param name The mountain's name.
+     * @param id The mountain's id.
+     * @param hemisphere The hemisphere filter.
+     * @param altitude The altitude filter.
+     * @param facets The facets to count: any of country, range and northern-hemisphere.
+     * @param offset Optional number of matches to skip before the page.
+     * @param limit Optional page size; the counts still cover every match.
+     * @param asOf Optional commit sequence number to read as of.
+     * @return A ResponseEntity with the page of mountains, the number of matches and the facet
+     * counts, plus the sequence number read as of, or an appropriate status code; in a
+     * DeferredResult in the sharded mode.
+     */
+    @GetMapping(value = {"/", "country/{country}",
+            "country/{country}/range/{range}",
+            "country/{country}/range/{range}/name/{name}", "id/{id}"
+    },
+            params = {"facets", "explain!=true"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Object getFacetedMountains(
+            @PathVariable(name = "country", required = false) final String country,
+            @PathVariable(name = "range", required = false) final String range,
+            @PathVariable(name = "name", required = false) final String name,
+            @PathVariable(name = "id", required = false) final String id,
+            @RequestParam(name = "northern-hemisphere", required = false) final String hemisphere,
+            @RequestParam(name = "altitude", required = false) final String altitude,
+            @RequestParam(name = "facets") final List<String> facets,
+            @RequestParam(name = "offset", required = false) final Integer offset,
+            @RequestParam(name = "limit", required = false) final Integer limit,
+            @RequestParam(name = "as-of", required = false) final Long asOf) {
+
+        final Map<String, Column> requested = new LinkedHashMap<>();
+        for (String facet : facets) {
+            final Column column = FACETS.get(facet);
+            if (column == null) {
+                return ResponseEntity.badRequest().build();
+            }
+            requested.put(facet, column);
+        }
+        if ((offset != null && offset < 0) || (limit != null && limit < 0)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (notValidMountain(country, range, name, hemisphere, altitude) || notValidId(id)) {
+            return ResponseEntity.ok(FacetedMountains.of(Collections.emptyList(), requested, offset, limit));
+        }
+        final MountainQuery criteria = new MountainQuery(country, range, name, id, hemisphere, altitude);
+        final CompiledQuery query = queryCompiler.compile(criteria);
+
+        if (shardedStore.isEnabled()) {
+            if (asOf != null) {
+                return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+            }
+            return whenDone(shardedStore.queryAll(List.of(query.filter())), results -> results.get(0).isEmpty()
+                    ? ResponseEntity.noContent().build()
+                    : ResponseEntity.ok(FacetedMountains.of(mountainsOf(results.get(0)), requested, offset,
+                            limit)));
+        }
+
+        if (asOf == null) {
+            final long latest = store.committedSeq();
+            if (negativeLookupFilter.definitelyAbsent(criteria)) {
+                return ResponseEntity.noContent().header(SNAPSHOT_SEQUENCE, String.valueOf(latest)).build();
+            }
+        }
+        final Optional<MountainStore.Snapshot> snapshot = openSnapshot(asOf);
+        if (snapshot.isEmpty()) {
+            return snapshotUnavailable(asOf);
+        }
+        try (MountainStore.Snapshot readView = snapshot.get()) {
+            final long started = System.nanoTime();
+            final QueryPlan.Execution execution = queryPlanner.plan(criteria, query).execute(readView);
+            workloadTracker.record(criteria, execution, System.nanoTime() - started);
+            if (execution.mountains().isEmpty()) {
+                return ResponseEntity.noContent().header(SNAPSHOT_SEQUENCE, String.valueOf(readView.seq()))
+                        .build();
+            }
+            return ResponseEntity.ok().header(SNAPSHOT_SEQUENCE, String.valueOf(readView.seq()))
+                    .body(FacetedMountains.of(execution.mountains(), requested, offset, limit));
+        }
+    }
+
+    /**
+     * Gets the k highest mountains matching the filters, highest first. Only those k are
+     * gathered and sent: the planner either walks the altitude index from the top or keeps the
+     * highest matches so far in a bounded heap, whichever it estimates is cheaper.
+     *
+     * @param country The mountain's country.
+     * @param range The mountain's range.
+     * @param k How many mountains to return, up to 1000.
+     * @param hemisphere The hemisphere filter.
+     * @param altitude The altitude filter.
+     * @param asOf Optional commit sequence number to read as of.
+     * @return A ResponseEntity with at most k mountains, equally high ones in ID order, and the
+     * sequence number read as of, or an appropriate status code; in a DeferredResult in the
+     * sharded mode.
+     */
+    @GetMapping(value = {"top", "country/{country}/top", "country/{country}/range/{range}/top"},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Object getHighestMountains(
+            @PathVariable(name = "country", required = false) final String country,
+            @PathVariable(name = "range", required = false) final String range,
+            @RequestParam(name = "k") final int k,
+            @RequestParam(name = "northern-hemisphere", required = false) final String hemisphere,
+            @RequestParam(name = "altitude", required = false) final String altitude,
+            @RequestParam(name = "as-of", required = false) final Long asOf) {
+
+        if (k < 1 || k > MAX_TOP_K) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (notValidMountain(country, range, null, hemisphere, altitude)) {
+            return ResponseEntity.ok(Collections.emptyList());
+        }
+        final MountainQuery criteria = new MountainQuery(country, range, null, null, hemisphere, altitude);
+        final CompiledQuery query = queryCompiler.compile(criteria);
+
+        if (shardedStore.isEnabled()) {
+            if (asOf != null) {
+                return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+            }
+            return whenDone(shardedStore.top(query.filter(), k), highest -> highest.isEmpty()
+                    ? ResponseEntity.noContent().build()
+                    : ResponseEntity.ok(mountainsOf(highest)));
+        }
+
+        if (asOf == null) {
+            final long latest = store.committedSeq();
+            if (negativeLookupFilter.definitelyAbsent(criteria)) {
+                return ResponseEntity.noContent().header(SNAPSHOT_SEQUENCE, String.valueOf(latest)).build();
+            }
+        }
+        final Optional<MountainStore.Snapshot> snapshot = openSnapshot(asOf);
+        if (snapshot.isEmpty()) {
+            return snapshotUnavailable(asOf);
+        }
+        try (MountainStore.Snapshot readView = snapshot.get()) {
+            final List<Mountain> highest = queryPlanner.planTop(criteria, query, k).top(readView, k);
+            if (highest.isEmpty()) {
+                return ResponseEntity.noContent().header(SNAPSHOT_SEQUENCE, String.valueOf(readView.seq()))
+                        .build();
+            }
+            return ResponseEntity.ok().header(SNAPSHOT_SEQUENCE, String.valueOf(readView.seq()))
+                    .body(highest);
+        }
+    }
+
+    /**
+     * Gets the number of mountains, their hemisphere split and their lowest, highest and mean
+     * altitude, for all of them or grouped by country and/or range. The figures are kept up to
+     * date as mountains are written, so reading them costs one step per group rather than a scan.
+     * They describe the latest writes, which may include one still being published, so as-of
+     * reads are not offered.
+     *
+     * @param groupBy Optional columns to group by: country, range, or both.
+     * @return A ResponseEntity with one row per group, in country then range order, or an
+     * appropriate status code.
+     */
+    @GetMapping(value = "aggregates", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<AltitudeAggregate>> getAggregates(
+            @RequestParam(name = "group-by", required = false) final List<String> groupBy) {
+
+        final Set<Column> columns = EnumSet.noneOf(Column.class);
+        if (groupBy != null) {
+            for (String column : groupBy) {
+                switch (column) {
+                    case "country" -> columns.add(Column.COUNTRY);
+                    case "range" -> columns.add(Column.RANGE);
+                    default -> {
+                        return ResponseEntity.badRequest().build();
+                    }
+                }
+            }
+        }
+
+        final List<AltitudeAggregate> rows = shardedStore.isEnabled()
+                ? shardedStore.aggregate(columns)
+                : MountainAggregates.rollUp(store.indexes().aggregates().summaries(), columns);
+        if (rows.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.ok(rows);
+    }
+
+    /**
+     * Gets approximate figures from the sketches kept of the mountains written: the number of
+     * distinct names and ranges and altitude quantiles, overall, in one country or in one range.
+     * They are read from fixed-size sketches, so answering takes microseconds however many
+     * mountains there are. The distinct counts have the relative standard error given in the
+     * response, and the quantiles are typically within the given rank error. Sketches cannot
+     * forget, so the figures include versions replaced or deleted since the sketches were last
+     * rebuilt from the latest versions, which happens once a tenth of what they hold is stale;
+     * the aggregates endpoint has exact figures for the latest versions.
+     *
+     * @param country Optional country to describe.
+     * @param range Optional range to describe, instead of a country.
+     * @param quantiles Optional altitude quantiles to estimate, each from 0 to 1; by default the
+     * quartiles, 90th and 99th percentiles.
+     * @return A ResponseEntity with the figures, or an appropriate status code.
+     */
+    @GetMapping(value = "stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<SketchStats> getStats(
+            @RequestParam(name = "country", required = false) final String country,
+            @RequestParam(name = "range", required = false) final String range,
+            @RequestParam(name = "quantiles", required = false) final List<Double> quantiles) {
+
+        final List<Double> wanted = quantiles == null ? DEFAULT_QUANTILES : quantiles;
+        if ((country != null && range != null) || wanted.isEmpty()
+                || wanted.stream().anyMatch(q -> q == null || !(q >= 0 && q <= 1))) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        final SketchStats stats = MountainSketches.describe(shardedStore.isEnabled()
+                ? shardedStore.sketches() : List.of(store.indexes().sketches()), country, range, wanted);
+        if (stats == null) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Suggests mountains as a name is typed: the highest mountains whose names start with the
+     * prefix, ignoring case. The names of the latest versions are kept in a trie that remembers
+     * the highest altitude under each node, so only the nodes leading to the k highest are
+     * visited, however many names share the prefix. Like the aggregates, the trie describes the
+     * latest writes, so as-of reads are not offered.
+     *
+     * @param prefix The start of the name.
+     * @param country Optional country to suggest mountains from.
+     * @param k How many mountains to suggest, up to 1000; 10 by default.
+     * @return A ResponseEntity with at most k mountains, highest first, or an appropriate status code.
+     */
+    @GetMapping(value = "autocomplete", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<Mountain>> getSuggestions(
+            @RequestParam(name = "prefix") final String prefix,
+            @RequestParam(name = "country", required = false) final String country,
+            @RequestParam(name = "k", defaultValue = "10") final int k) {
+
+        if (prefix.isBlank() || k < 1 || k > MAX_TOP_K) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        final List<Mountain> suggestions = shardedStore.isEnabled()
+                ? shardedStore.complete(prefix, country, k)
+                : store.indexes().names().highest(prefix, country, k);
+        if (suggestions.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.ok(suggestions);
+    }
+
+    /**
+     * Runs several filter queries in one request, all against the same snapshot of the store.
+     *
+     * @param queries The filter specs to run.
+     * @param asOf Optional commit sequence number to read as of.
+     * @return A ResponseEntity with one list of mountains per query, in the order given,
+     * or an appropriate status code; in a DeferredResult in the sharded mode.
+     */
+    @PostMapping(value = "query", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Object batchQuery(
+            @RequestBody final List<MountainQuery> queries,
+            @RequestParam(name = "as-of", required = false) final Long asOf) {
+
+        if (queries.isEmpty() || queries.size() > MAX_BATCH_QUERIES) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        final List<CompiledQuery> compiled = new ArrayList<>(queries.size());
+        for (MountainQuery query : queries) {
+            if (notValidMountain(query.country(), query.range(), query.name(), query.hemisphere(),
+                    query.altitude()) || notValidId(query.id())) {
+                compiled.add(CompiledQuery.NOTHING);
             } else {
-                return ResponseEntity.ok(new ArrayList<>(filteredList));
+                compiled.add(queryCompiler.compile(query));
             }
-        } finally {
-            readLock.unlock();
+        }
+
+        if (shardedStore.isEnabled()) {
+            if (asOf != null) {
+                return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+            }
+            final List<Predicate<Mountain>> filters = new ArrayList<>(compiled.size());
+            for (CompiledQuery query : compiled) {
+                filters.add(query.filter());
+            }
+            return whenDone(shardedStore.queryAll(filters), perQuery -> {
+                final List<List<Mountain>> results = new ArrayList<>(perQuery.size());
+                for (List<ShardedMountainStore.Stored> matches : perQuery) {
+                    results.add(mountainsOf(matches));
+                }
+                return ResponseEntity.ok(results);
+            });
+        }
+
+        final Optional<MountainStore.Snapshot> snapshot = openSnapshot(asOf);
+        if (snapshot.isEmpty()) {
+            return snapshotUnavailable(asOf);
+        }
+        try (MountainStore.Snapshot readView = snapshot.get()) {
+            return ResponseEntity.ok().header(SNAPSHOT_SEQUENCE, String.valueOf(readView.seq()))
+                    .body(store.queryAll(readView, compiled));
         }
     }
 
     /**
-     * Updates an existing mountain based on the ID.
+     * Updates an existing mountain based on the ID. With an If-Match header holding the ETag
+     * from an earlier GET, the update is applied only if the mountain has not changed since, and
+     * without the write lock unless it changes the name, range or country.
      *
      * @param id the mountain's identifier.
      * @param newMountain the mountain object with updated variables.
-     * @return A ResponseEntity with the appropriate status code.
+     * @param ifMatch Optional ETag of the mountain version the update is based on.
+     * @param idempotencyKey Optional key that makes retries return the original result.
+     * @return A ResponseEntity with the appropriate status code - 409 if another mountain already has
+     * the new name, range and country.
      */
     @PutMapping(value = "update-mountain/{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Void> updateMountain(@PathVariable("id") int id,
-                                               @RequestBody Mountain newMountain) {
+                                               @RequestBody Mountain newMountain,
+                                               @RequestHeader(name = HttpHeaders.IF_MATCH, required = false)
+                                               final String ifMatch,
+                                               @RequestHeader(name = IDEMPOTENCY_KEY, required = false)
+                                               final String idempotencyKey) {
 
         if (notValidMountain(newMountain.getCountry(), newMountain.getRange(), newMountain.getName(),
                 String.valueOf(newMountain.getIsNorthern()), String.valueOf(newMountain.getAltitude()))) {
             return ResponseEntity.badRequest().build();
         }
 
-        try {
-            writeLock.lock();
-            Optional<Mountain> existingMountain = mountainList.stream()
-                    .filter(mountain -> mountain.getId() == id)
-                    .findFirst();
-
-            if (existingMountain.isEmpty()) {
-                return ResponseEntity.notFound().build();
-            } else {
-                Mountain mountain = existingMountain.get();
-                mountain.setName(newMountain.getName());
-                mountain.setAltitude(newMountain.getAltitude());
-                mountain.setRange(newMountain.getRange());
-                mountain.setCountry(newMountain.getCountry());
-                mountain.setIsNorthern(newMountain.getIsNorthern());
-
-                return ResponseEntity.ok().build();
+        if (ifMatch != null && !ANY_VERSION.equals(ifMatch.trim())) {
+            final OptionalLong expectedVersion = parseETag(ifMatch);
+            if (expectedVersion.isEmpty()) {
+                return ResponseEntity.badRequest().build();
             }
-        } finally {
-            writeLock.unlock();
+            return idempotencyCache.execute(idempotencyKey,
+                    fingerprint("PUT update-mountain/" + id + " " + ifMatch, newMountain),
+                    () -> shardedStore.isEnabled()
+                            ? shardedStore.updateMountainIfMatch(id, newMountain, expectedVersion.getAsLong())
+                            : store.updateMountainIfMatch(id, newMountain, expectedVersion.getAsLong()));
         }
+
+        return idempotencyCache.execute(idempotencyKey, fingerprint("PUT update-mountain/" + id, newMountain),
+                () -> write(new Mutation.Update(id, newMountain)));
+    }
+
+    /**
+     * Inserts or replaces a mountain by its natural key (name, range and country),
+     * so a client does not need to look up the ID before updating.
+     *
+     * @param newMountain the mountain to insert or replace.
+     * @param idempotencyKey Optional key that makes retries return the original result.
+     * @return A ResponseEntity with the mountain's ID and the appropriate status code.
+     */
+    @PutMapping(value = "upsert-mountain", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Integer> upsertMountain(
+            @RequestBody final Mountain newMountain,
+            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) final String idempotencyKey) {
+
+        if (newMountain.getName() == null || newMountain.getRange() == null || newMountain.getCountry() == null
+                || notValidMountain(newMountain.getCountry(), newMountain.getRange(), newMountain.getName(),
+                String.valueOf(newMountain.getIsNorthern()), String.valueOf(newMountain.getAltitude()))) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return idempotencyCache.execute(idempotencyKey, fingerprint("PUT upsert-mountain", newMountain),
+                () -> write(new Mutation.Upsert(newMountain)));
     }
 
     /**
      * Deletes a mountain from their ID.
      *
      * @param id the mountain's ID.
+     * @param idempotencyKey Optional key that makes retries return the original result.
      * @return A ResponseEntity with the appropriate status code.
      */
     @DeleteMapping(value = "delete-mountain/{id}")
-    public ResponseEntity<Void> deleteMountain(@PathVariable("id") int id) {
-        try {
-            writeLock.lock();
-            Optional<Mountain> mountainToDelete = mountainList.stream()
-                    .filter(mountain -> mountain.getId() == id)
-                    .findFirst();
-            if (mountainToDelete.isEmpty()) {
-                return ResponseEntity.notFound().build();
-            } else {
-                mountainList.remove(mountainToDelete.get());
-                return ResponseEntity.ok().build();
-            }
-        } finally {
-            writeLock.unlock();
-        }
+    public ResponseEntity<Void> deleteMountain(@PathVariable("id") int id,
+                                               @RequestHeader(name = IDEMPOTENCY_KEY, required = false)
+                                               final String idempotencyKey) {
+        return idempotencyCache.execute(idempotencyKey, "DELETE delete-mountain/" + id,
+                () -> write(new Mutation.Delete(id)));
     }
 
     /**
-     * Filters the list of mountains based on criteria.
+     * Deletes every mountain matching the given criteria in a single pass.
+     * Accepts the same filters as getMountains, but at least one must be given
+     * so that a bare request cannot clear the whole list.
      *
-     * @param mountainCountry The country filter.
-     * @param mountainRange The range filter.
-     * @param mountainName The name filter.
-     * @param id The ID filter.
+     * @param country The mountain's country.
+     * @param range The mountain's range.
+     * @param name The mountain's name.
      * @param hemisphere The hemisphere filter.
      * @param altitude The altitude filter.
-     * @return A list of filtered mountains.
+     * @param idempotencyKey Optional key that makes retries return the original result.
+     * @return A ResponseEntity with the number of deleted mountains
+     * or an appropriate status code.
      */
-    private List<Mountain> filterList(final String mountainCountry, final String mountainRange,
-                                      final String mountainName, final String id, final String hemisphere,
-                                      final String altitude) {
-        return mountainList.stream()
-                .filter(mountain -> mountainCountry == null || mountain.getCountry().equals(mountainCountry))
-                .filter(mountain -> mountainRange == null || mountain.getRange().equals(mountainRange))
-                .filter(mountain -> mountainName == null || mountain.getName().equals(mountainName))
-                .filter(mountain -> id == null || mountain.getId() == Integer.parseInt(id))
-                .filter(mountain -> hemisphere == null || String.valueOf(mountain.getIsNorthern()).equals(hemisphere))
-                .filter(mountain -> altitude == null || mountain.getAltitude() > Integer.parseInt(altitude))
-                .toList();
+    @DeleteMapping(value = {"delete-mountains", "delete-mountains/country/{country}",
+            "delete-mountains/country/{country}/range/{range}",
+            "delete-mountains/country/{country}/range/{range}/name/{name}"
+    },
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Integer> deleteMountains(
+            @PathVariable(name = "country", required = false) final String country,
+            @PathVariable(name = "range", required = false) final String range,
+            @PathVariable(name = "name", required = false) final String name,
+            @RequestParam(name = "northern-hemisphere", required = false) final String hemisphere,
+            @RequestParam(name = "altitude", required = false) final String altitude,
+            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) final String idempotencyKey) {
+
+        if (country == null && hemisphere == null && altitude == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (notValidMountain(country, range, name, hemisphere, altitude)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        final Predicate<Mountain> filter = queryCompiler.compile(new MountainQuery(country, range, name, null,
+                hemisphere, altitude)).filter();
+        return idempotencyCache.execute(idempotencyKey, "DELETE delete-mountains/" + country + "/" + range + "/" + name
+                + "?" + hemisphere + "&" + altitude, () -> write(new Mutation.DeleteMatching(filter)));
+    }
+
+    /**
+     * Gets the progress of a change accepted by the asynchronous write mode.
+     *
+     * @param operationId The operation ID from the Location header of the 202 response.
+     * @return A ResponseEntity with the operation's status, or 404 if it is unknown.
+     */
+    @GetMapping(value = "operations/{operationId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<OperationStatus> getOperation(@PathVariable("operationId") final long operationId) {
+        return ResponseEntity.of(mutationQueue.status(operationId));
+    }
+
+    /**
+     * Fingerprints a request that has a body, for the idempotency cache.
+     *
+     * @param operation The method and route, with any path variables that pick what is changed.
+     * @param body The deserialized request body.
+     * @return The fingerprint, covering the body as well as the operation.
+     */
+    private String fingerprint(final String operation, final Object body) {
+        try {
+            return IdempotencyCache.fingerprint(operation, objectMapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException e) {
+            // the body was just read from JSON, so it can always be written back
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the mountain version from an ETag, as sent back in If-Match.
+     *
+     * @param eTag The ETag, optionally weak and quoted.
+     * @return The version number, or empty if the ETag is not one this server issued.
+     */
+    private OptionalLong parseETag(final String eTag) {
+        String value = eTag.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        try {
+            return OptionalLong.of(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    /**
+     * Opens the snapshot a read should use.
+     *
+     * @param asOf The commit sequence number to read as of, or null for the latest.
+     * @return The snapshot, or empty if the requested one cannot be read.
+     */
+    private Optional<MountainStore.Snapshot> openSnapshot(final Long asOf) {
+        if (asOf == null) {
+            return Optional.of(store.openSnapshot());
+        }
+        return store.openSnapshot(asOf);
+    }
+
+    /**
+     * Builds the response for an as-of read that cannot be served.
+     *
+     * @param asOf The requested commit sequence number.
+     * @param <T> The response body type.
+     * @return 400 if the sequence number is in the future, or 410 if its versions have been collected.
+     */
+    private <T> ResponseEntity<T> snapshotUnavailable(final long asOf) {
+        if (asOf < 0 || asOf > store.committedSeq()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.status(HttpStatus.GONE).build();
+    }
+
+    /**
+     * Applies a change to the store, or queues it for the writer thread and returns 202 Accepted
+     * with the operation's location when the asynchronous write mode is enabled. In the sharded
+     * mode the change is always sent to the owning shards and awaited.
+     *
+     * @param mutation The change to make.
+     * @param <T> The response body type.
+     * @return A ResponseEntity with the result and the appropriate status code.
+     */
+    private <T> ResponseEntity<T> write(final Mutation<T> mutation) {
+        if (shardedStore.isEnabled()) {
+            return mutation.applyTo(shardedStore);
+        }
+        if (!mutationQueue.isEnabled()) {
+            return store.apply(mutation);
+        }
+        final OptionalLong operationId = mutationQueue.submit(mutation);
+        if (operationId.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.accepted().location(URI.create("/operations/" + operationId.getAsLong())).build();
+    }
+
+    /**
+     * Answers the request once a sharded query finishes, and cancels the query if the request
+     * ends first, such as when the client disconnects or the request times out.
+     *
+     * @param query The running query.
+     * @param toResponse Builds the response from the query's results.
+     * @param <R> The query's result type.
+     * @param <T> The response body type.
+     * @return A DeferredResult completed with the response, or 504 if the query deadline passed.
+     */
+    private <R, T> DeferredResult<ResponseEntity<T>> whenDone(final CompletableFuture<R> query,
+                                                            final Function<R, ResponseEntity<T>> toResponse) {
+        final DeferredResult<ResponseEntity<T>> result = new DeferredResult<>();
+        result.onTimeout(() -> query.cancel(true));
+        result.onError(failure -> query.cancel(true));
+        query.whenComplete((value, failure) -> {
+            if (failure == null) {
+                result.setResult(toResponse.apply(value));
+            } else if (failure instanceof TimeoutException) {
+                result.setResult(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build());
+            } else if (!(failure instanceof CancellationException)) {
+                result.setErrorResult(failure);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Unwraps the mountains from the sharded store's results.
+     *
+     * @param matches The stored mountains.
+     * @return The mountains, in the same order.
+     */
+    private List<Mountain> mountainsOf(final List<ShardedMountainStore.Stored> matches) {
+        final List<Mountain> mountains = new ArrayList<>(matches.size());
+        for (ShardedMountainStore.Stored stored : matches) {
+            mountains.add(stored.mountain());
+        }
+        return mountains;
     }
 
     /**
@@ -223,6 +842,24 @@ public class MountainResource {
         return !validCountry || !validRange || !validName || !validHemisphere || !validAltitude;
     }
 
+    /**
+     * Check if an ID filter is given but is not a number.
+     *
+     * @param id The ID filter.
+     * @return True if the ID is not valid, false otherwise.
+     */
+    private boolean notValidId(String id) {
+        if (id == null) {
+            return false;
+        }
+        try {
+            Integer.parseInt(id);
+            return false;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
     /**
      * Check if the country is valid from an array of countries.
      *
@@ -0,0 +1,159 @@
+package org.example.mountainserver;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Probabilistic sketches of the latest mountains, for approximate answers in constant memory
+ * per scope: overall, per country and per range. Each scope has HyperLogLog sketches of its
+ * distinct names and ranges and a t-digest of its altitudes. Every written version is added to
+ * its scopes; sketches cannot forget, so values replaced or deleted still count until the
+ * sketches are rebuilt from the latest versions, which their owner does once a tenth of what
+ * they hold is stale. For exact figures of the latest versions there are the
+ * {@link MountainAggregates}.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class MountainSketches {
+
+    /** 4096 registers per distinct-count sketch, for a relative standard error of about 1.6%. */
+    private static final int HLL_PRECISION = 12;
+    private static final double DIGEST_COMPRESSION = 100;
+    /** Typical rank error of a quantile from a t-digest of this compression, near the median. */
+    private static final double QUANTILE_RANK_ERROR = 0.01;
+    /** The sketches are stale once replaced or deleted versions make up this share of what they hold. */
+    private static final int STALE_SHARE_DIVISOR = 10;
+
+    private volatile Scopes scopes = new Scopes();
+    // the scopes being rebuilt, which writes made meanwhile are added to as well
+    private volatile Scopes rebuilding;
+    private final AtomicLong added = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    /**
+     * Adds a newly written version to its scopes, counting the one it replaces as stale.
+     *
+     * @param before The version it replaces, or null if the mountain is new.
+     * @param after The new version, or null if the mountain was deleted.
+     */
+    public void written(final Mountain before, final Mountain after) {
+        if (before != null) {
+            stale.incrementAndGet();
+        }
+        if (after == null) {
+            return;
+        }
+        added.incrementAndGet();
+        scopes.add(after);
+        final Scopes next = rebuilding;
+        if (next != null) {
+            next.add(after);
+        }
+    }
+
+    /**
+     * Checks whether enough versions have been replaced or deleted since the last rebuild for
+     * the sketches to be worth rebuilding.
+     *
+     * @return True if they should be rebuilt.
+     */
+    public boolean isStale() {
+        final long replaced = stale.get();
+        return replaced > 0 && replaced * STALE_SHARE_DIVISOR >= added.get();
+    }
+
+    /**
+     * Rebuilds the sketches from the latest versions and swaps them in, from one thread at a time.
+     * Writes made while the latest versions are read are added to the new sketches too, so none
+     * is lost, though one read as well may count twice and one replaced meanwhile counts as
+     * stale until the next rebuild. To lose none, each version must be readable from the given
+     * mountains before it is passed to {@link #written}.
+     *
+     * @param latest The latest version of every mountain.
+     */
+    public void rebuild(final Iterable<Mountain> latest) {
+        final Scopes next = new Scopes();
+        rebuilding = next;
+        stale.set(0);
+        added.set(0);
+        for (Mountain mountain : latest) {
+            added.incrementAndGet();
+            next.add(mountain);
+        }
+        scopes = next;
+        rebuilding = null;
+    }
+
+    /**
+     * Describes one scope, merged across several sets of sketches, such as one per shard.
+     *
+     * @param sketches The sets of sketches.
+     * @param country The country to describe, or null.
+     * @param range The range to describe, or null; at most one of country and range may be given.
+     * @param quantiles The altitude quantiles wanted, each from 0 to 1.
+     * @return The description, or null if nothing has been written to the scope.
+     */
+    public static SketchStats describe(final List<MountainSketches> sketches, final String country,
+                                       final String range, final List<Double> quantiles) {
+        final Sketch merged = new Sketch();
+        for (MountainSketches set : sketches) {
+            final Scopes scopes = set.scopes;
+            final Sketch scope = country != null ? scopes.countries.get(country)
+                    : range != null ? scopes.ranges.get(range) : scopes.overall;
+            if (scope != null) {
+                merged.addAll(scope);
+            }
+        }
+        if (merged.altitudes.count() == 0) {
+            return null;
+        }
+        final Map<String, Double> altitudeQuantiles = new LinkedHashMap<>();
+        for (double q : quantiles) {
+            altitudeQuantiles.put(String.valueOf(q), merged.altitudes.quantile(q));
+        }
+        return new SketchStats(country, range, merged.altitudes.count(), merged.names.estimate(),
+                merged.ranges.estimate(), merged.names.relativeStandardError(), altitudeQuantiles,
+                QUANTILE_RANK_ERROR);
+    }
+
+    /**
+     * The sketches for every scope, as built since one rebuild.
+     */
+    private static final class Scopes {
+
+        private final Sketch overall = new Sketch();
+        private final Map<String, Sketch> countries = new ConcurrentHashMap<>();
+        private final Map<String, Sketch> ranges = new ConcurrentHashMap<>();
+
+        private void add(final Mountain mountain) {
+            overall.add(mountain);
+            countries.computeIfAbsent(mountain.getCountry(), country -> new Sketch()).add(mountain);
+            ranges.computeIfAbsent(mountain.getRange(), range -> new Sketch()).add(mountain);
+        }
+    }
+
+    /**
+     * The sketches for one scope.
+     */
+    private static final class Sketch {
+
+        private final HyperLogLog names = new HyperLogLog(HLL_PRECISION);
+        private final HyperLogLog ranges = new HyperLogLog(HLL_PRECISION);
+        private final TDigest altitudes = new TDigest(DIGEST_COMPRESSION);
+
+        private void add(final Mountain mountain) {
+            names.add(ScalableBloomFilter.hash(mountain.getName()));
+            ranges.add(ScalableBloomFilter.hash(mountain.getRange()));
+            altitudes.add(mountain.getAltitude());
+        }
+
+        private void addAll(final Sketch other) {
+            names.addAll(other.names);
+            ranges.addAll(other.ranges);
+            altitudes.addAll(other.altitudes);
+        }
+    }
+}
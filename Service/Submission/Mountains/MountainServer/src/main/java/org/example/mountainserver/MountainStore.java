@@ -0,0 +1,976 @@
+package org.example.mountainserver;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * In-memory, multi-version store of mountains.
+ * Every change is a commit stamped with the next sequence number, and adds a new version of each
+ * mountain it touches rather than changing it in place. Readers pick a snapshot sequence and see
+ * the newest version of each mountain no later than it, so they never block or get blocked by
+ * writers. Most writers are serialised by a writer-only lock, with concurrent writers combined into
+ * a single critical section; conditional updates that keep the natural key skip the lock and
+ * compare-and-set the mountain's latest version directly. Sequence numbers are handed out as
+ * commits are published, so each mountain's versions are always in commit order. A background
+ * thread drops versions no open snapshot can see. Large scans are filtered in parallel by the
+ * {@link ParallelScanner}, and altitude and hemisphere criteria can instead be run by a
+ * {@link ScanKernel} over a columnar copy of the latest commit, once it has been read often
+ * enough to repay making one.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class MountainStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MountainStore.class);
+    private static final int MAX_COMBINED_WRITES = 256;
+
+    private final Lock writeLock = new ReentrantLock();
+
+    private final ConcurrentNavigableMap<Integer, Version> versions = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Long, Integer> openSnapshots = new ConcurrentSkipListMap<>();
+    private final AtomicLong lastTicket = new AtomicLong();
+    private volatile long committedSeq;
+    private volatile long gcHorizon;
+    private final long retainedCommits;
+
+    private final Map<Mountain, Integer> idsByKey = new ConcurrentHashMap<>();
+    private final MountainIndexes indexes = new MountainIndexes();
+    private final IdAllocator.Partition ids;
+    private final ParallelScanner scanner;
+    private final ScanKernel kernel = ScanKernel.best();
+    private volatile MountainColumns latestColumns;
+    // the latest commit a column query has been answered for without a columnar copy
+    private volatile long uncopiedSeq = -1;
+    private Commit writing;
+
+    private final Queue<PendingWrite<?>> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final Duration gcInterval;
+    private ScheduledExecutorService collector;
+
+    /**
+     * Creates the store.
+     *
+     * @param retainedCommits How many recent commits stay readable with as-of even with no snapshot open.
+     * @param gcInterval How often old versions are collected.
+     * @param idAllocator Where new mountains' IDs come from.
+     * @param scanner Runs the scans behind queries.
+     */
+    public MountainStore(@Value("${mountain.mvcc.retained-commits:10000}") final long retainedCommits,
+                         @Value("${mountain.mvcc.gc-interval:PT1S}") final Duration gcInterval,
+                         final IdAllocator idAllocator, final ParallelScanner scanner) {
+        this.ids = idAllocator.newPartition();
+        this.scanner = scanner;
+        this.retainedCommits = retainedCommits;
+        this.gcInterval = gcInterval;
+    }
+
+    /**
+     * Starts the background collector.
+     */
+    @PostConstruct
+    void start() {
+        LOG.info("Altitude and hemisphere scans use the {} kernel", kernel.name());
+        collector = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("mountain-gc").daemon().factory());
+        collector.scheduleWithFixedDelay(this::collectGarbage, gcInterval.toMillis(), gcInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background collector.
+     */
+    @PreDestroy
+    void stop() {
+        if (collector != null) {
+            collector.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the sequence number of the latest commit.
+     *
+     * @return The latest commit's sequence number.
+     */
+    public long committedSeq() {
+        return committedSeq;
+    }
+
+    /**
+     * Gets the secondary indexes and statistics, for the query planner.
+     *
+     * @return The indexes.
+     */
+    public MountainIndexes indexes() {
+        return indexes;
+    }
+
+    /**
+     * Builds a new secondary index over every version in the store, including those only older
+     * snapshots can see, while writes carry on; writes made meanwhile add their own entries.
+     * The index is ready for the planner once this returns.
+     *
+     * @param columns The columns to index, most significant first.
+     * @return The index.
+     */
+    public SecondaryIndex buildIndex(final List<Column> columns) {
+        final SecondaryIndex index = new SecondaryIndex(columns, true);
+        indexes.register(index);
+        // a version the collector drops during the walk may leave an entry behind; lookups
+        // recheck every candidate, so it only costs a wasted probe
+        for (Map.Entry<Integer, Version> entry : versions.entrySet()) {
+            for (Version version = entry.getValue(); version != null; version = version.previous) {
+                if (version.mountain() != null) {
+                    index.add(entry.getKey(), version.mountain());
+                }
+            }
+        }
+        index.markReady();
+        return index;
+    }
+
+    /**
+     * Opens a snapshot of the latest commit. Close it once done so its versions can be collected.
+     *
+     * @return The snapshot.
+     */
+    public Snapshot openSnapshot() {
+        while (true) {
+            final long seq = committedSeq;
+            if (register(seq)) {
+                return new Snapshot(seq);
+            }
+        }
+    }
+
+    /**
+     * Opens a snapshot of an earlier commit, for time-travel reads or consistent paging.
+     *
+     * @param seq The commit sequence number to read as of.
+     * @return The snapshot, or empty if the sequence is in the future or its versions have been collected.
+     */
+    public Optional<Snapshot> openSnapshot(final long seq) {
+        if (seq < 0 || seq > committedSeq || !register(seq)) {
+            return Optional.empty();
+        }
+        return Optional.of(new Snapshot(seq));
+    }
+
+    /**
+     * Gets the mountains matching a filter as of the latest commit.
+     *
+     * @param filter The filter to match.
+     * @return The matching mountains, in the order they were added.
+     */
+    public List<Mountain> query(final Predicate<Mountain> filter) {
+        try (Snapshot snapshot = openSnapshot()) {
+            return snapshot.query(filter);
+        }
+    }
+
+    /**
+     * Runs several queries against the same snapshot.
+     *
+     * @param snapshot The snapshot to read.
+     * @param queries The queries to run.
+     * @return One list of matching mountains per query, in the order given.
+     */
+    public List<List<Mountain>> queryAll(final Snapshot snapshot, final List<CompiledQuery> queries) {
+        final List<List<Mountain>> results = new ArrayList<>(queries.size());
+        for (CompiledQuery query : queries) {
+            results.add(snapshot.query(query.columns(), query.otherColumns()));
+        }
+        return results;
+    }
+
+    /**
+     * Applies a single change as its own commit. Concurrent callers are combined: each queues its
+     * change, and whichever thread gets the write lock applies every queued change in one critical
+     * section and hands each caller its own result, so writers do not convoy on the lock one by one.
+     * A caller that finds the lock taken parks until its change has been applied or it is woken to
+     * combine the changes still queued: whoever releases the write lock wakes the oldest waiting
+     * writer, so a change queued while the lock was held is never left behind.
+     *
+     * @param mutation The change to apply.
+     * @param <T> The response body type.
+     * @return A ResponseEntity with the result and the appropriate status code.
+     */
+    public <T> ResponseEntity<T> apply(final Mutation<T> mutation) {
+        final PendingWrite<T> pending = new PendingWrite<>(mutation, new CompletableFuture<>(),
+                Thread.currentThread());
+        pendingWrites.add(pending);
+        boolean interrupted = false;
+        while (!pending.result().isDone()) {
+            if (writeLock.tryLock()) {
+                try {
+                    combinePendingWrites();
+                } finally {
+                    unlockWrites();
+                }
+            } else {
+                LockSupport.park(this);
+                // the change is already queued and cannot be withdrawn, so the interrupt waits until it is applied
+                interrupted |= Thread.interrupted();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            return pending.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Applies queued changes in arrival order until the queue is empty or the batch limit is reached,
+     * completing each caller's future. The caller must hold the write lock.
+     */
+    private void combinePendingWrites() {
+        PendingWrite<?> pending;
+        int applied = 0;
+        while (applied < MAX_COMBINED_WRITES && (pending = pendingWrites.poll()) != null) {
+            pending.complete(this);
+            applied++;
+        }
+    }
+
+    /**
+     * Releases the write lock and wakes the oldest queued writer, if any, to combine the changes
+     * still waiting. A writer queues its change before trying the lock, so one that found the lock
+     * taken is seen here.
+     */
+    private void unlockWrites() {
+        writeLock.unlock();
+        final PendingWrite<?> next = pendingWrites.peek();
+        if (next != null) {
+            LockSupport.unpark(next.waiter());
+        }
+    }
+
+    /**
+     * Applies several changes, in order, each as its own commit, under one acquisition of the write lock.
+     * A change that throws fails on its own: the changes before it stay committed and the ones after
+     * it are still applied, as when concurrent callers are combined.
+     *
+     * @param mutations The changes to apply.
+     * @return One completed future per change, in the order given, holding its result or what it threw.
+     */
+    public List<CompletableFuture<ResponseEntity<?>>> applyAll(final List<? extends Mutation<?>> mutations) {
+        try {
+            writeLock.lock();
+            final List<CompletableFuture<ResponseEntity<?>>> results = new ArrayList<>(mutations.size());
+            for (Mutation<?> mutation : mutations) {
+                final CompletableFuture<ResponseEntity<?>> result = new CompletableFuture<>();
+                try {
+                    result.complete(commit(mutation));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+                results.add(result);
+            }
+            return results;
+        } finally {
+            unlockWrites();
+        }
+    }
+
+    /**
+     * Applies a change as a new commit, publishing it to readers once it is complete.
+     * The caller must hold the write lock.
+     *
+     * @param mutation The change to apply.
+     * @param <T> The response body type.
+     * @return A ResponseEntity with the result and the appropriate status code.
+     */
+    private <T> ResponseEntity<T> commit(final Mutation<T> mutation) {
+        writing = new Commit();
+        try {
+            return mutation.applyTo(this);
+        } finally {
+            publish(writing);
+            writing = null;
+        }
+    }
+
+    /**
+     * Publishes a commit to readers: takes the next sequence number and advances the committed
+     * sequence once every earlier commit has been published.
+     *
+     * @param commit The commit, whose versions are all installed.
+     */
+    private void publish(final Commit commit) {
+        final long seq = lastTicket.incrementAndGet();
+        commit.seq = seq;
+        while (committedSeq != seq - 1) {
+            Thread.onSpinWait();
+        }
+        committedSeq = seq;
+    }
+
+    /**
+     * Updates a mountain only if its latest version is the one the caller read, without taking the
+     * write lock: the new version is compare-and-set in place of the one it replaces, so updates to
+     * different mountains run in parallel. An update that changes the natural key does take the
+     * lock, since adds check the natural key lookup for clashes under it.
+     *
+     * @param id the mountain's identifier.
+     * @param newMountain the mountain object with updated variables.
+     * @param expectedVersion the mountain version the caller read, from its ETag.
+     * @return A ResponseEntity with the appropriate status code - 412 if the mountain has changed
+     * or another update won the race, 409 if another mountain already has the new name, range
+     * and country.
+     */
+    public ResponseEntity<Void> updateMountainIfMatch(final int id, final Mountain newMountain,
+                                                      final long expectedVersion) {
+        final Version head = versions.get(id);
+        if (head == null || head.mountain() == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (head.rowVersion() != expectedVersion || !head.isPublished(committedSeq)) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
+
+        final Mountain mountain = copyOf(newMountain, id);
+        if (mountain.equals(head.mountain())) {
+            // same name, range and country, so the natural key lookup already leads here
+            return replaceIfMatch(id, head, mountain, false);
+        }
+        writeLock.lock();
+        try {
+            if (keyHeldByAnother(mountain, id)) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
+            return replaceIfMatch(id, head, mountain, true);
+        } finally {
+            unlockWrites();
+        }
+    }
+
+    /**
+     * Compare-and-sets a new version in place of the one a conditional update read, as its own commit.
+     *
+     * @param id the mountain's identifier.
+     * @param head the version the update read.
+     * @param mountain the new version.
+     * @param rekey whether to move the natural key lookup to the new version; the caller must then
+     * hold the write lock.
+     * @return A ResponseEntity with the appropriate status code - 412 if another update won the race.
+     */
+    private ResponseEntity<Void> replaceIfMatch(final int id, final Version head, final Mountain mountain,
+                                                final boolean rekey) {
+        final Commit commit = new Commit();
+        final boolean installed = versions.replace(id, head, new Version(commit, mountain, head));
+        if (installed) {
+            if (rekey) {
+                idsByKey.remove(head.mountain(), id);
+                idsByKey.put(mountain, id);
+            }
+            indexes.changed(id, head.mountain(), mountain);
+        }
+        publish(commit);
+        if (installed) {
+            return ResponseEntity.ok().build();
+        }
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+    }
+
+    /**
+     * Adds a list of mountains. Each mountain is handled on its own, so new mountains
+     * are stored even if others in the batch clash with existing ones.
+     * The caller must hold the write lock.
+     *
+     * @param mountains The list of mountains to add.
+     * @return A ResponseEntity with the result of each mountain, in the order submitted,
+     * and the appropriate status code.
+     */
+    ResponseEntity<List<AddResult>> addMountains(final List<Mountain> mountains) {
+        final List<AddResult> results = new ArrayList<>(mountains.size());
+        boolean anyCreated = false;
+        for (Mountain mountain : mountains) {
+            Integer storedId = idsByKey.get(mountain);
+            if (storedId == null) {
+                final int id = ids.next();
+                install(id, copyOf(mountain, id));
+                results.add(new AddResult(id, AddResult.Status.CREATED));
+                anyCreated = true;
+            } else {
+                Mountain stored = latest(storedId);
+                if (stored.getAltitude() == mountain.getAltitude()
+                        && stored.getIsNorthern() == mountain.getIsNorthern()) {
+                    results.add(new AddResult(storedId, AddResult.Status.ALREADY_EXISTED));
+                } else {
+                    results.add(new AddResult(storedId, AddResult.Status.CONFLICT));
+                }
+            }
+        }
+
+        if (anyCreated) {
+            return ResponseEntity.ok(results);
+        } else {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(results);
+        }
+    }
+
+    /**
+     * Updates an existing mountain based on the ID. The caller must hold the write lock.
+     *
+     * @param id the mountain's identifier.
+     * @param newMountain the mountain object with updated variables.
+     * @return A ResponseEntity with the appropriate status code - 409 if another mountain already
+     * has the new name, range and country.
+     */
+    ResponseEntity<Void> updateMountain(final int id, final Mountain newMountain) {
+        if (latest(id) == null) {
+            return ResponseEntity.notFound().build();
+        } else if (keyHeldByAnother(newMountain, id)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } else {
+            install(id, copyOf(newMountain, id));
+            return ResponseEntity.ok().build();
+        }
+    }
+
+    /**
+     * Checks whether a mountain's natural key belongs to a different mountain. The caller must
+     * hold the write lock, so the answer holds until it releases it.
+     *
+     * @param mountain The mountain whose name, range and country are checked.
+     * @param id The ID the key is wanted for.
+     * @return True if another mountain has the key.
+     */
+    private boolean keyHeldByAnother(final Mountain mountain, final int id) {
+        final Integer owner = idsByKey.get(mountain);
+        return owner != null && owner != id;
+    }
+
+    /**
+     * Inserts or replaces a mountain by its natural key (name, range and country).
+     * The caller must hold the write lock.
+     *
+     * @param newMountain the mountain to insert or replace.
+     * @return A ResponseEntity with the mountain's ID and the appropriate status code.
+     */
+    ResponseEntity<Integer> upsertMountain(final Mountain newMountain) {
+        final Integer storedId = idsByKey.get(newMountain);
+        if (storedId != null) {
+            install(storedId, copyOf(newMountain, storedId));
+            return ResponseEntity.ok(storedId);
+        } else {
+            final int id = ids.next();
+            install(id, copyOf(newMountain, id));
+            return ResponseEntity.status(HttpStatus.CREATED).body(id);
+        }
+    }
+
+    /**
+     * Deletes a mountain from their ID. The caller must hold the write lock.
+     *
+     * @param id the mountain's ID.
+     * @return A ResponseEntity with the appropriate status code.
+     */
+    ResponseEntity<Void> deleteMountain(final int id) {
+        if (latest(id) == null) {
+            return ResponseEntity.notFound().build();
+        } else {
+            install(id, null);
+            return ResponseEntity.ok().build();
+        }
+    }
+
+    /**
+     * Deletes every mountain matching a filter in a single pass. The caller must hold the write lock.
+     *
+     * @param filter The filter to match.
+     * @return A ResponseEntity with the number of deleted mountains.
+     */
+    ResponseEntity<Integer> deleteMountains(final Predicate<Mountain> filter) {
+        int deleted = 0;
+        for (Map.Entry<Integer, Version> entry : versions.entrySet()) {
+            Mountain mountain = entry.getValue().mountain();
+            if (mountain != null && filter.test(mountain)) {
+                install(entry.getKey(), null);
+                deleted++;
+            }
+        }
+        return ResponseEntity.ok(deleted);
+    }
+
+    /**
+     * Checks whether any version of a mountain is kept. A mountain without one cannot be seen by
+     * any snapshot, open or future, and one with them has an ID the store handed out.
+     *
+     * @param id The mountain's ID.
+     * @return True if the store holds versions of it.
+     */
+    public boolean hasVersions(final int id) {
+        return versions.containsKey(id);
+    }
+
+    /**
+     * Gets the latest version of a mountain. The caller must hold the write lock.
+     *
+     * @param id The mountain's ID.
+     * @return The mountain, or null if it does not exist or has been deleted.
+     */
+    private Mountain latest(final int id) {
+        final Version head = versions.get(id);
+        return head == null ? null : head.mountain();
+    }
+
+    /**
+     * Adds a new version of a mountain in the commit being written, keeping the natural key
+     * lookup and the indexes in step. Waits out a conditional update still publishing, and retries if one slips in.
+     * The caller must hold the write lock.
+     *
+     * @param id The mountain's ID.
+     * @param mountain The new version, or null to delete the mountain.
+     */
+    private void install(final int id, final Mountain mountain) {
+        Version previous;
+        do {
+            previous = versions.get(id);
+            // only build on published versions, so each chain stays in commit order
+            while (previous != null && previous.commit != writing && !previous.isPublished(committedSeq)) {
+                Thread.onSpinWait();
+                previous = versions.get(id);
+            }
+        } while (!(previous == null
+                ? versions.putIfAbsent(id, new Version(writing, mountain, null)) == null
+                : versions.replace(id, previous, new Version(writing, mountain, previous))));
+
+        if (previous != null && previous.mountain() != null) {
+            idsByKey.remove(previous.mountain(), id);
+        }
+        if (mountain != null) {
+            idsByKey.put(mountain, id);
+        }
+        indexes.changed(id, previous == null ? null : previous.mountain(), mountain);
+    }
+
+    /**
+     * Copies a mountain so stored versions are never changed after they are published.
+     *
+     * @param mountain The mountain to copy.
+     * @param id The ID to give the copy.
+     * @return The copy.
+     */
+    private static Mountain copyOf(final Mountain mountain, final int id) {
+        final Mountain copy = new Mountain(mountain.getName(), mountain.getAltitude(), mountain.getRange(),
+                mountain.getCountry(), mountain.getIsNorthern());
+        copy.setId(id);
+        return copy;
+    }
+
+    /**
+     * Registers an open snapshot, so its versions are kept until it is closed.
+     *
+     * @param seq The snapshot's sequence number.
+     * @return True if registered, false if its versions may already have been collected.
+     */
+    private boolean register(final long seq) {
+        openSnapshots.merge(seq, 1, Integer::sum);
+        // the collector publishes its horizon before re-reading the open snapshots, so either it
+        // sees this registration or this check sees its horizon
+        if (seq >= gcHorizon) {
+            return true;
+        }
+        release(seq);
+        return false;
+    }
+
+    /**
+     * Releases an open snapshot.
+     *
+     * @param seq The snapshot's sequence number.
+     */
+    private void release(final long seq) {
+        openSnapshots.merge(seq, -1, (count, change) -> count + change == 0 ? null : count + change);
+    }
+
+    /**
+     * Gets the oldest commit that must stay readable: the oldest open snapshot, or the
+     * retention window behind the latest commit if that is older.
+     *
+     * @return The oldest sequence number that may still be read.
+     */
+    private long oldestReadableSeq() {
+        long oldest = Math.max(0, committedSeq - retainedCommits);
+        final Map.Entry<Long, Integer> oldestOpen = openSnapshots.firstEntry();
+        if (oldestOpen != null) {
+            oldest = Math.min(oldest, oldestOpen.getKey());
+        }
+        return oldest;
+    }
+
+    /**
+     * Drops versions that no open or future snapshot can see: everything older than the newest
+     * version at or before the horizon, and mountains deleted at or before it. Index entries that
+     * only the dropped versions needed are removed with them. Sketches gone stale are then rebuilt
+     * from the newest version of each mountain, published or not, since a version is installed
+     * before the sketches are told of it.
+     */
+    void collectGarbage() {
+        long horizon = Math.max(gcHorizon, oldestReadableSeq());
+        gcHorizon = horizon;
+        horizon = Math.min(horizon, oldestReadableSeq());
+
+        for (Map.Entry<Integer, Version> entry : versions.entrySet()) {
+            Version version = entry.getValue();
+            while (version != null && version.seq() > horizon) {
+                version = version.previous;
+            }
+            if (version == null) {
+                continue;
+            }
+            final Version dropped = version.previous;
+            version.previous = null;
+            if (version == entry.getValue() && version.mountain() == null) {
+                versions.remove(entry.getKey(), version);
+            }
+            final int id = entry.getKey();
+            for (Version old = dropped; old != null; old = old.previous) {
+                if (old.mountain() != null) {
+                    indexes.collected(id, old.mountain(), () -> mountainsOf(versions.get(id)));
+                }
+            }
+        }
+        if (indexes.sketches().isStale()) {
+            indexes.sketches().rebuild(() -> versions.values().stream()
+                    .map(Version::mountain)
+                    .filter(Objects::nonNull)
+                    .iterator());
+        }
+    }
+
+    /**
+     * Lists the mountains in a chain of versions.
+     *
+     * @param head The newest version, or null.
+     * @return Each version's mountain, newest first; null for deletions.
+     */
+    private static List<Mountain> mountainsOf(final Version head) {
+        final List<Mountain> mountains = new ArrayList<>();
+        for (Version version = head; version != null; version = version.previous) {
+            mountains.add(version.mountain());
+        }
+        return mountains;
+    }
+
+    /**
+     * A consistent, read-only view of the store as of one commit.
+     */
+    public final class Snapshot implements AutoCloseable {
+
+        private final long seq;
+        private boolean closed;
+
+        private Snapshot(final long seq) {
+            this.seq = seq;
+        }
+
+        /**
+         * Gets the commit sequence number this snapshot reads as of.
+         *
+         * @return The snapshot's sequence number.
+         */
+        public long seq() {
+            return seq;
+        }
+
+        /**
+         * Gets the mountains matching a filter.
+         *
+         * @param filter The filter to match.
+         * @return The matching mountains, in the order they were added.
+         */
+        public List<Mountain> query(final Predicate<Mountain> filter) {
+            return scanner.scan(versions, head -> {
+                final Version visible = head.visibleVersionAt(seq);
+                final Mountain mountain = visible == null ? null : visible.mountain();
+                return mountain != null && filter.test(mountain) ? mountain : null;
+            });
+        }
+
+        /**
+         * Gets the highest mountains matching a filter in one scan, keeping no more than k of them
+         * per chunk of the scan.
+         *
+         * @param filter The filter to match.
+         * @param k How many mountains to find.
+         * @return At most k mountains, highest first, equally high ones by ID.
+         */
+        public List<Mountain> highestScanned(final Predicate<Mountain> filter, final int k) {
+            return scanner.scan(versions, () -> new TopK<Mountain>(k, TopK.HIGHEST_FIRST),
+                    (top, head) -> {
+                        final Version visible = head.visibleVersionAt(seq);
+                        final Mountain mountain = visible == null ? null : visible.mountain();
+                        if (mountain != null && filter.test(mountain)) {
+                            top.offer(mountain);
+                        }
+                    }, (lower, upper) -> {
+                        lower.offerAll(upper);
+                        return lower;
+                    }).best();
+        }
+
+        /**
+         * Gets the mountains matching a column filter and a filter on their other fields. The
+         * column filter is run by the scan kernel over a columnar copy of this snapshot when one
+         * is to hand, and tested row by row in an ordinary scan otherwise.
+         *
+         * @param columnFilter The altitude and hemisphere criteria.
+         * @param rest The filter for the other fields, tested only on rows the column filter selects.
+         * @return The matching mountains, in the order they were added.
+         */
+        public List<Mountain> query(final ColumnFilter columnFilter, final Predicate<Mountain> rest) {
+            if (columnFilter.matchesAll()) {
+                return query(rest);
+            }
+            final MountainColumns columns = columns();
+            if (columns == null) {
+                return query(mountain -> columnFilter.test(mountain.getAltitude(), mountain.getIsNorthern())
+                        && rest.test(mountain));
+            }
+            final long[] selection = kernel.select(columns, columnFilter);
+            final List<Mountain> matches = new ArrayList<>();
+            for (int word = 0; word < selection.length; word++) {
+                for (long bits = selection[word]; bits != 0; bits &= bits - 1) {
+                    final Mountain mountain = columns.row(word * Long.SIZE + Long.numberOfTrailingZeros(bits));
+                    if (rest.test(mountain)) {
+                        matches.add(mountain);
+                    }
+                }
+            }
+            return matches;
+        }
+
+        /**
+         * Gets the shared columnar copy of this snapshot. Making a copy reads every row, as much
+         * as the scan it would speed up, so it is only made for the latest commit once a second
+         * column query reads it, and never for an older one; under steady writes each commit is
+         * usually replaced before then, and queries go on scanning rows instead of copying the
+         * table each time.
+         *
+         * @return The columns, or null if there is no copy of this commit and none is worth making.
+         */
+        private MountainColumns columns() {
+            final MountainColumns shared = latestColumns;
+            if (shared != null && shared.seq() == seq) {
+                return shared;
+            }
+            if (seq != committedSeq) {
+                return null;
+            }
+            if (uncopiedSeq != seq) {
+                uncopiedSeq = seq;
+                return null;
+            }
+            final MountainColumns columns = new MountainColumns(seq, query(mountain -> true));
+            if (shared == null || shared.seq() < seq) {
+                latestColumns = columns;
+            }
+            return columns;
+        }
+
+        /**
+         * Gets the highest mountains matching a filter by walking the altitude index downwards,
+         * stopping as soon as k have been found, so only the top of the index is ever read.
+         * Each mountain is only counted under the altitude of the version this snapshot sees.
+         *
+         * @param filter The filter to match.
+         * @param above An altitude no match can be at or below, to stop at.
+         * @param k How many mountains to find.
+         * @return At most k mountains, highest first, equally high ones by ID.
+         */
+        public List<Mountain> highest(final Predicate<Mountain> filter, final int above, final int k) {
+            final List<Mountain> highest = new ArrayList<>(k);
+            for (Map.Entry<Integer, Set<Integer>> entry : indexes.altitudeIndex().highestFirst(above).entrySet()) {
+                if (highest.size() >= k) {
+                    break;
+                }
+                final int from = highest.size();
+                for (int id : entry.getValue()) {
+                    final Mountain mountain = get(id);
+                    if (mountain != null && mountain.getAltitude() == entry.getKey() && filter.test(mountain)) {
+                        highest.add(mountain);
+                    }
+                }
+                highest.subList(from, highest.size()).sort(TopK.HIGHEST_FIRST);
+            }
+            return highest.size() > k ? new ArrayList<>(highest.subList(0, k)) : highest;
+        }
+
+        /**
+         * Gets a mountain as this snapshot sees it.
+         *
+         * @param id The mountain's ID.
+         * @return The mountain, or null if it does not exist in this snapshot.
+         */
+        public Mountain get(final int id) {
+            final Version head = versions.get(id);
+            final Version visible = head == null ? null : head.visibleVersionAt(seq);
+            return visible == null ? null : visible.mountain();
+        }
+
+        /**
+         * Gets the version number of a mountain as this snapshot sees it, for use as an ETag.
+         *
+         * @param id The mountain's ID.
+         * @return The mountain's version number, or 0 if it does not exist in this snapshot.
+         */
+        public long versionOf(final int id) {
+            final Version head = versions.get(id);
+            if (head == null) {
+                return 0;
+            }
+            final Version visible = head.visibleVersionAt(seq);
+            return visible == null || visible.mountain() == null ? 0 : visible.rowVersion();
+        }
+
+        /**
+         * Releases the snapshot so the versions only it needed can be collected.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(seq);
+            }
+        }
+    }
+
+    /**
+     * A set of versions that become visible together. Its sequence number is assigned when it
+     * is published.
+     */
+    private static final class Commit {
+        private volatile long seq = Long.MAX_VALUE;
+    }
+
+    /**
+     * One version of a mountain, linked to the version it replaced.
+     */
+    private static final class Version {
+        private final Commit commit;
+        private final Mountain mountain;
+        private final long rowVersion;
+        private volatile Version previous;
+
+        /**
+         * Creates a version.
+         *
+         * @param commit The commit that writes it.
+         * @param mountain The mountain as of that commit, or null if it was deleted.
+         * @param previous The version it replaced, or null.
+         */
+        Version(final Commit commit, final Mountain mountain, final Version previous) {
+            this.commit = commit;
+            this.mountain = mountain;
+            this.rowVersion = previous == null ? 1 : previous.rowVersion + 1;
+            this.previous = previous;
+        }
+
+        long seq() {
+            return commit.seq;
+        }
+
+        Mountain mountain() {
+            return mountain;
+        }
+
+        /**
+         * Gets the mountain's version number, which goes up by one with every change to it.
+         *
+         * @return The version number.
+         */
+        long rowVersion() {
+            return rowVersion;
+        }
+
+        /**
+         * Checks whether readers can see this version yet.
+         *
+         * @param committedSeq The latest published sequence number.
+         * @return True if its commit has been published.
+         */
+        boolean isPublished(final long committedSeq) {
+            return commit.seq <= committedSeq;
+        }
+
+        /**
+         * Finds the version a snapshot sees.
+         *
+         * @param snapshotSeq The snapshot's sequence number.
+         * @return The version as of the snapshot, or null if the mountain did not exist yet.
+         */
+        Version visibleVersionAt(final long snapshotSeq) {
+            for (Version version = this; version != null; version = version.previous) {
+                if (version.seq() <= snapshotSeq) {
+                    return version;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A change waiting to be applied by whichever writer combines it.
+     *
+     * @param mutation The change.
+     * @param result Completed with the change's result once applied.
+     * @param waiter The thread waiting for the result, unparked once it is ready.
+     * @param <T> The response body type.
+     */
+    private record PendingWrite<T>(Mutation<T> mutation, CompletableFuture<ResponseEntity<T>> result,
+                                   Thread waiter) {
+
+        /**
+         * Applies the change as its own commit, completes the caller's future and wakes the caller.
+         * The caller must hold the write lock.
+         *
+         * @param store The store to change.
+         */
+        void complete(final MountainStore store) {
+            try {
+                result.complete(store.commit(mutation));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            LockSupport.unpark(waiter);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.mountainserver;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A change to the mountain store, captured so it can be applied now or queued and applied later
+ * by the writer thread.
+ *
+ * @param <T> The response body type the change produces.
+ * @author 2014459
+ * @version 1.0
+ */
+public sealed interface Mutation<T> {
+
+    /**
+     * Applies the change. The caller must hold the store's write lock.
+     *
+     * @param store The store to change.
+     * @return A ResponseEntity with the result and the appropriate status code.
+     */
+    ResponseEntity<T> applyTo(MountainStore store);
+
+    /**
+     * Applies the change by sending it to the shards that own the mountains involved.
+     *
+     * @param store The sharded store to change.
+     * @return A ResponseEntity with the result and the appropriate status code.
+     */
+    ResponseEntity<T> applyTo(ShardedMountainStore store);
+
+    /**
+     * Adds a list of mountains.
+     *
+     * @param mountains The mountains to add.
+     */
+    record Add(List<Mountain> mountains) implements Mutation<List<AddResult>> {
+        @Override
+        public ResponseEntity<List<AddResult>> applyTo(final MountainStore store) {
+            return store.addMountains(mountains);
+        }
+
+        @Override
+        public ResponseEntity<List<AddResult>> applyTo(final ShardedMountainStore store) {
+            return store.addMountains(mountains);
+        }
+    }
+
+    /**
+     * Replaces the details of the mountain with the given ID.
+     *
+     * @param id The mountain's ID.
+     * @param mountain The new details.
+     */
+    record Update(int id, Mountain mountain) implements Mutation<Void> {
+        @Override
+        public ResponseEntity<Void> applyTo(final MountainStore store) {
+            return store.updateMountain(id, mountain);
+        }
+
+        @Override
+        public ResponseEntity<Void> applyTo(final ShardedMountainStore store) {
+            return store.updateMountain(id, mountain);
+        }
+    }
+
+    /**
+     * Inserts or replaces a mountain by its name, range and country.
+     *
+     * @param mountain The mountain to insert or replace.
+     */
+    record Upsert(Mountain mountain) implements Mutation<Integer> {
+        @Override
+        public ResponseEntity<Integer> applyTo(final MountainStore store) {
+            return store.upsertMountain(mountain);
+        }
+
+        @Override
+        public ResponseEntity<Integer> applyTo(final ShardedMountainStore store) {
+            return store.upsertMountain(mountain);
+        }
+    }
+
+    /**
+     * Deletes the mountain with the given ID.
+     *
+     * @param id The mountain's ID.
+     */
+    record Delete(int id) implements Mutation<Void> {
+        @Override
+        public ResponseEntity<Void> applyTo(final MountainStore store) {
+            return store.deleteMountain(id);
+        }
+
+        @Override
+        public ResponseEntity<Void> applyTo(final ShardedMountainStore store) {
+            return store.deleteMountain(id);
+        }
+    }
+
+    /**
+     * Deletes every mountain matching a filter.
+     *
+     * @param filter The filter to match.
+     */
+    record DeleteMatching(Predicate<Mountain> filter) implements Mutation<Integer> {
+        @Override
+        public ResponseEntity<Integer> applyTo(final MountainStore store) {
+            return store.deleteMountains(filter);
+        }
+
+        @Override
+        public ResponseEntity<Integer> applyTo(final ShardedMountainStore store) {
+            return store.deleteMountains(filter);
+        }
+    }
+}
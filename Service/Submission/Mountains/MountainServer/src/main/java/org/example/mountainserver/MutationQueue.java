@@ -0,0 +1,226 @@
+package org.example.mountainserver;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous write mode: changes are appended to a bounded ring buffer and a single writer thread
+ * drains it, applying each batch under one acquisition of the store's write lock. Request threads
+ * return as soon as their change is queued, and can poll for its outcome by operation ID.
+ * Enabled by setting mountain.write-mode=async.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class MutationQueue {
+
+    private static final String ASYNC_MODE = "async";
+    private static final int MAX_BATCH = 256;
+
+    private final MountainStore store;
+    private final boolean enabled;
+    private final BlockingQueue<Operation> buffer;
+    private final int maxRememberedOperations;
+
+    private final AtomicLong nextOperationId = new AtomicLong(1);
+    private final Map<Long, OperationStatus> statuses = new ConcurrentHashMap<>();
+    private final Deque<Long> finished = new ArrayDeque<>();
+    private Thread writer;
+
+    /**
+     * Creates the queue.
+     *
+     * @param store The store the writer thread applies changes to.
+     * @param writeMode "async" to queue changes, anything else to apply them on the request thread.
+     * @param capacity The most changes that can be waiting; further changes are rejected.
+     * @param maxRememberedOperations The most finished operations whose outcome can still be polled.
+     */
+    public MutationQueue(final MountainStore store,
+                         @Value("${mountain.write-mode:sync}") final String writeMode,
+                         @Value("${mountain.write-queue.capacity:4096}") final int capacity,
+                         @Value("${mountain.write-queue.remembered-operations:10000}")
+                         final int maxRememberedOperations) {
+        this.store = store;
+        this.enabled = ASYNC_MODE.equalsIgnoreCase(writeMode);
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.maxRememberedOperations = maxRememberedOperations;
+    }
+
+    /**
+     * Starts the writer thread if the asynchronous mode is enabled.
+     */
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            writer = Thread.ofPlatform().name("mountain-writer").daemon().start(this::drain);
+        }
+    }
+
+    /**
+     * Stops the writer thread; changes still queued are not applied.
+     */
+    @PreDestroy
+    void stop() {
+        if (writer != null) {
+            writer.interrupt();
+        }
+    }
+
+    /**
+     * Whether changes should be queued rather than applied on the request thread.
+     *
+     * @return True if the asynchronous write mode is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a change for the writer thread.
+     *
+     * @param mutation The change to apply.
+     * @return The operation ID to poll, or empty if the buffer is full.
+     */
+    public OptionalLong submit(final Mutation<?> mutation) {
+        final long id = nextOperationId.getAndIncrement();
+        statuses.put(id, OperationStatus.pending(id));
+        if (buffer.offer(new Operation(id, mutation))) {
+            return OptionalLong.of(id);
+        } else {
+            statuses.remove(id);
+            return OptionalLong.empty();
+        }
+    }
+
+    /**
+     * Gets the progress of a queued change.
+     *
+     * @param id The operation ID.
+     * @return The operation's status, or empty if it is unknown or has been forgotten.
+     */
+    public Optional<OperationStatus> status(final long id) {
+        return Optional.ofNullable(statuses.get(id));
+    }
+
+    /**
+     * The writer thread's loop: waits for a change, then takes everything else already queued
+     * and applies it as one batch.
+     */
+    private void drain() {
+        final List<Operation> batch = new ArrayList<>(MAX_BATCH);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(buffer.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            buffer.drainTo(batch, MAX_BATCH - 1);
+            applyBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Applies a batch, first collapsing updates to the same mountain: while only updates have been
+     * seen, a later update to an ID replaces an earlier one, and both operations report its outcome.
+     * Any other kind of change ends the run, since it may create, remove or rename mountains.
+     * Each change is committed on its own, so one that fails only fails the operations it decides.
+     *
+     * @param batch The queued operations, in arrival order.
+     */
+    private void applyBatch(final List<Operation> batch) {
+        final List<Slot> slots = new ArrayList<>(batch.size());
+        final Map<Integer, Slot> updatesInRun = new HashMap<>();
+        for (Operation operation : batch) {
+            if (operation.mutation() instanceof Mutation.Update update) {
+                Slot slot = updatesInRun.get(update.id());
+                if (slot != null) {
+                    slot.mutation = update;
+                    slot.operationIds.add(operation.id());
+                    continue;
+                }
+                slot = new Slot(operation);
+                updatesInRun.put(update.id(), slot);
+                slots.add(slot);
+            } else {
+                updatesInRun.clear();
+                slots.add(new Slot(operation));
+            }
+        }
+
+        final List<Mutation<?>> mutations = new ArrayList<>(slots.size());
+        for (Slot slot : slots) {
+            mutations.add(slot.mutation);
+        }
+
+        final List<CompletableFuture<ResponseEntity<?>>> results = store.applyAll(mutations);
+        for (int i = 0; i < slots.size(); i++) {
+            final OperationStatus.State state;
+            final ResponseEntity<?> result;
+            if (results.get(i).isCompletedExceptionally()) {
+                // only this change failed; the others in the batch were applied on their own
+                state = OperationStatus.State.FAILED;
+                result = ResponseEntity.internalServerError().build();
+            } else {
+                state = OperationStatus.State.COMPLETED;
+                result = results.get(i).join();
+            }
+            for (long id : slots.get(i).operationIds) {
+                finish(new OperationStatus(id, state, result.getStatusCode().value(), result.getBody()));
+            }
+        }
+    }
+
+    /**
+     * Records the outcome of an operation, forgetting the oldest finished ones beyond the limit.
+     * Only called on the writer thread.
+     *
+     * @param status The operation's final status.
+     */
+    private void finish(final OperationStatus status) {
+        statuses.put(status.id(), status);
+        finished.add(status.id());
+        while (finished.size() > maxRememberedOperations) {
+            statuses.remove(finished.poll());
+        }
+    }
+
+    /**
+     * A queued change and the ID it was accepted under.
+     *
+     * @param id The operation ID.
+     * @param mutation The change.
+     */
+    private record Operation(long id, Mutation<?> mutation) {
+    }
+
+    /**
+     * A change to apply in a batch, and every operation whose outcome it decides.
+     */
+    private static final class Slot {
+        private Mutation<?> mutation;
+        private final List<Long> operationIds = new ArrayList<>();
+
+        Slot(final Operation operation) {
+            this.mutation = operation.mutation();
+            this.operationIds.add(operation.id());
+        }
+    }
+}
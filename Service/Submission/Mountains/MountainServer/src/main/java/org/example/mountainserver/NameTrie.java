@@ -0,0 +1,226 @@
+package org.example.mountainserver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Radix trie over the latest version of every mountain's name, for typeahead. Names are matched
+ * without regard to case. Each edge holds as long a run of characters as no other name branches
+ * from, and each node remembers the highest altitude anywhere below it, so the highest mountains
+ * under a prefix are found best first: the walk only ever opens the node that could hold the next
+ * highest, and stops once it has k, however many names share the prefix. Writes keep the trie
+ * compact, dropping nodes left empty and joining a node that no longer branches to its one child.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class NameTrie {
+
+    private final Node root = new Node("");
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Moves a mountain from the name of the version it replaces to the name of its new version.
+     *
+     * @param before The version it replaces, or null if it is new.
+     * @param after The new version, or null if the mountain was deleted.
+     */
+    public void changed(final Mountain before, final Mountain after) {
+        lock.writeLock().lock();
+        try {
+            if (before != null) {
+                remove(before);
+            }
+            if (after != null) {
+                add(after);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the highest mountains whose names start with a prefix.
+     *
+     * @param prefix The start of the name, in any case.
+     * @param country Only mountains in this country, or null for any.
+     * @param k How many mountains to return.
+     * @return At most k mountains, highest first, equally high ones by ID.
+     */
+    public List<Mountain> highest(final String prefix, final String country, final int k) {
+        lock.readLock().lock();
+        try {
+            final Node start = find(keyOf(prefix));
+            final List<Mountain> highest = new ArrayList<>(k);
+            if (start == null) {
+                return highest;
+            }
+            // nodes are opened before mountains of the same height, so all of those are queued, in ID order,
+            // by the time the first is taken
+            final PriorityQueue<Object> frontier = new PriorityQueue<>(Comparator
+                    .comparingInt(NameTrie::bestOf).reversed()
+                    .thenComparing(item -> item instanceof Node ? 0 : 1)
+                    .thenComparingInt(item -> item instanceof Mountain mountain ? mountain.getId() : 0));
+            frontier.add(start);
+            while (!frontier.isEmpty() && highest.size() < k) {
+                final Object next = frontier.poll();
+                if (next instanceof Node node) {
+                    frontier.addAll(node.children.values());
+                    frontier.addAll(node.mountains.values());
+                } else if (next instanceof Mountain mountain
+                        && (country == null || country.equals(mountain.getCountry()))) {
+                    highest.add(mountain);
+                }
+            }
+            return highest;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int bestOf(final Object item) {
+        return item instanceof Node node ? node.best : ((Mountain) item).getAltitude();
+    }
+
+    private static String keyOf(final String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Finds the node at or just below the end of a prefix.
+     *
+     * @param prefix The prefix.
+     * @return The node, or null if no name starts with the prefix.
+     */
+    private Node find(final String prefix) {
+        Node node = root;
+        int i = 0;
+        while (i < prefix.length()) {
+            final Node child = node.children.get(prefix.charAt(i));
+            if (child == null) {
+                return null;
+            }
+            final int common = commonLength(child.edge, prefix, i);
+            if (i + common == prefix.length()) {
+                return child;
+            }
+            if (common < child.edge.length()) {
+                return null;
+            }
+            node = child;
+            i += common;
+        }
+        return node;
+    }
+
+    private void add(final Mountain mountain) {
+        final String key = keyOf(mountain.getName());
+        final Deque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        path.push(node);
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.children.get(key.charAt(i));
+            if (child == null) {
+                child = new Node(key.substring(i));
+                node.children.put(key.charAt(i), child);
+                i = key.length();
+            } else {
+                final int common = commonLength(child.edge, key, i);
+                if (common < child.edge.length()) {
+                    // split the edge where the new name branches off
+                    final Node split = new Node(child.edge.substring(0, common));
+                    child.edge = child.edge.substring(common);
+                    split.children.put(child.edge.charAt(0), child);
+                    split.best = child.best;
+                    node.children.put(key.charAt(i), split);
+                    child = split;
+                }
+                i += common;
+            }
+            node = child;
+            path.push(node);
+        }
+        node.mountains.put(mountain.getId(), mountain);
+        for (Node onPath : path) {
+            onPath.best = Math.max(onPath.best, mountain.getAltitude());
+        }
+    }
+
+    private void remove(final Mountain mountain) {
+        final String key = keyOf(mountain.getName());
+        final Deque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            path.push(node);
+            final Node child = node.children.get(key.charAt(i));
+            if (child == null || !key.startsWith(child.edge, i)) {
+                return;
+            }
+            node = child;
+            i += child.edge.length();
+        }
+        if (node.mountains.remove(mountain.getId()) == null) {
+            return;
+        }
+        node.recomputeBest();
+        while (!path.isEmpty()) {
+            final Node parent = path.pop();
+            if (node.mountains.isEmpty() && node.children.isEmpty()) {
+                parent.children.remove(node.edge.charAt(0));
+            } else if (node.mountains.isEmpty() && node.children.size() == 1) {
+                // the node no longer branches, so join it to its one child
+                final Node only = node.children.values().iterator().next();
+                only.edge = node.edge + only.edge;
+                parent.children.put(only.edge.charAt(0), only);
+            }
+            parent.recomputeBest();
+            node = parent;
+        }
+    }
+
+    private static int commonLength(final String edge, final String key, final int from) {
+        final int most = Math.min(edge.length(), key.length() - from);
+        int common = 0;
+        while (common < most && edge.charAt(common) == key.charAt(from + common)) {
+            common++;
+        }
+        return common;
+    }
+
+    /**
+     * A node of the trie: the characters on the edge into it, its children by their edges' first
+     * character, the mountains whose names end here by ID, and the highest altitude below it.
+     */
+    private static final class Node {
+
+        private String edge;
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private final Map<Integer, Mountain> mountains = new HashMap<>(2);
+        private int best = Integer.MIN_VALUE;
+
+        private Node(final String edge) {
+            this.edge = edge;
+        }
+
+        private void recomputeBest() {
+            int highest = Integer.MIN_VALUE;
+            for (Mountain mountain : mountains.values()) {
+                highest = Math.max(highest, mountain.getAltitude());
+            }
+            for (Node child : children.values()) {
+                highest = Math.max(highest, child.best);
+            }
+            best = highest;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Answers lookups for mountains that were never stored from the multi-version store's bloom
+ * filters, before a snapshot is opened. A filter query giving an ID, or a country and range with or
+ * without a name, is a definite miss if its ID or key has never been written: the other criteria
+ * can only narrow it further. Keys are added to the filters before their commit is published, so a
+ * miss holds for every commit up to the latest one read beforehand.
+ * Lookups the filters could not rule out but that found nothing are counted as false positives,
+ * unless their ID or key once had a mountain that has since been deleted or moved: the filters
+ * cannot forget, so those are counted apart, as deleted-key hits. The false-positive rate, published
+ * for each filter as mountain.bloom.false-positive-rate alongside the rate expected from how full
+ * the filter is, is therefore the share of lookups for IDs or keys never written that the filter
+ * let through. Deleted-key hits are told apart by another bloom filter, so now and then a true false
+ * positive is counted as one, which can only make the rate read low by that filter's own rate.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class NegativeLookupFilter {
+
+    private static final String KEYS = "keys";
+    private static final String IDS = "ids";
+
+    private final MountainStore store;
+    private final boolean enabled;
+    private final Counter keyMisses;
+    private final Counter idMisses;
+    private final Counter keyFalsePositives;
+    private final Counter idFalsePositives;
+    private final Counter keyDeletedHits;
+    private final Counter idDeletedHits;
+
+    /**
+     * Creates the filter.
+     *
+     * @param store The store whose bloom filters are used.
+     * @param registry Where the filter metrics are registered.
+     * @param enabled Whether definite misses are answered without reading the store.
+     */
+    public NegativeLookupFilter(final MountainStore store, final MeterRegistry registry,
+                                @Value("${mountain.bloom.enabled:true}") final boolean enabled) {
+        this.store = store;
+        this.enabled = enabled;
+        this.keyMisses = misses(registry, KEYS);
+        this.idMisses = misses(registry, IDS);
+        this.keyFalsePositives = falsePositives(registry, KEYS);
+        this.idFalsePositives = falsePositives(registry, IDS);
+        this.keyDeletedHits = deletedHits(registry, KEYS);
+        this.idDeletedHits = deletedHits(registry, IDS);
+        registerRates(registry, KEYS, keyMisses, keyFalsePositives, store.indexes().keyFilter());
+        registerRates(registry, IDS, idMisses, idFalsePositives, store.indexes().idFilter());
+    }
+
+    /**
+     * Checks whether a filter query cannot match any mountain ever stored.
+     *
+     * @param query The query's criteria, already validated.
+     * @return True if it definitely matches nothing; false if it has to be run.
+     */
+    public boolean definitelyAbsent(final MountainQuery query) {
+        if (!enabled) {
+            return false;
+        }
+        final MountainIndexes indexes = store.indexes();
+        if (query.id() != null
+                && !indexes.idFilter().mightContain(ScalableBloomFilter.hash(Integer.parseInt(query.id())))) {
+            idMisses.increment();
+            return true;
+        }
+        if (query.country() != null && query.range() != null && !indexes.keyFilter().mightContain(
+                MountainIndexes.keyHash(query.country(), query.range(), query.name()))) {
+            keyMisses.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records how a query the filters let through turned out. Only a query made of nothing but an
+     * ID, or nothing but a key, says whether its filter was right, so others are ignored, and one
+     * for an ID or key whose mountains were deleted says nothing about the filter either.
+     *
+     * @param query The query's criteria.
+     * @param found Whether it matched any mountain.
+     */
+    public void confirm(final MountainQuery query, final boolean found) {
+        if (!enabled || found || query.hemisphere() != null || query.altitude() != null) {
+            return;
+        }
+        final boolean byKey = query.country() != null && query.range() != null;
+        final boolean anyKey = query.country() != null || query.range() != null || query.name() != null;
+        final MountainIndexes indexes = store.indexes();
+        if (query.id() != null && !anyKey) {
+            if (indexes.removedIdFilter().mightContain(ScalableBloomFilter.hash(Integer.parseInt(query.id())))) {
+                idDeletedHits.increment();
+            } else {
+                idFalsePositives.increment();
+            }
+        } else if (query.id() == null && byKey) {
+            if (indexes.removedKeyFilter().mightContain(
+                    MountainIndexes.keyHash(query.country(), query.range(), query.name()))) {
+                keyDeletedHits.increment();
+            } else {
+                keyFalsePositives.increment();
+            }
+        }
+    }
+
+    private static Counter misses(final MeterRegistry registry, final String filter) {
+        return Counter.builder("mountain.bloom.misses")
+                .description("Lookups answered as definite misses without reading the store")
+                .tag("filter", filter)
+                .register(registry);
+    }
+
+    private static Counter falsePositives(final MeterRegistry registry, final String filter) {
+        return Counter.builder("mountain.bloom.false-positives")
+                .description("Lookups the filter let through that found nothing")
+                .tag("filter", filter)
+                .register(registry);
+    }
+
+    private static Counter deletedHits(final MeterRegistry registry, final String filter) {
+        return Counter.builder("mountain.bloom.deleted-key-hits")
+                .description("Lookups the filter let through that found nothing because their mountains were deleted")
+                .tag("filter", filter)
+                .register(registry);
+    }
+
+    private static void registerRates(final MeterRegistry registry, final String filter, final Counter misses,
+                                      final Counter falsePositives, final ScalableBloomFilter bloom) {
+        Gauge.builder("mountain.bloom.false-positive-rate", () -> {
+                    final double negatives = misses.count() + falsePositives.count();
+                    return negatives == 0 ? 0 : falsePositives.count() / negatives;
+                })
+                .description("Share of lookups for keys never written that the filter failed to rule out")
+                .tag("filter", filter)
+                .register(registry);
+        Gauge.builder("mountain.bloom.expected-false-positive-rate", bloom,
+                        ScalableBloomFilter::expectedFalsePositiveRate)
+                .description("False-positive rate expected from how full the filter's bits are")
+                .tag("filter", filter)
+                .register(registry);
+        Gauge.builder("mountain.bloom.keys", bloom, ScalableBloomFilter::keys)
+                .description("Distinct keys added to the filter")
+                .tag("filter", filter)
+                .register(registry);
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.mountainserver;
+
+/**
+ * The progress of a change accepted by the asynchronous write mode.
+ *
+ * @param id The operation ID returned when the change was accepted.
+ * @param state Whether the change is still queued or has been applied.
+ * @param status The HTTP status the change produced, or null while pending.
+ * @param result The response body the change produced, or null while pending or if it has none.
+ * @author 2014459
+ * @version 1.0
+ */
+public record OperationStatus(long id, State state, Integer status, Object result) {
+
+    /**
+     * The state of an operation.
+     */
+    public enum State {
+        /** The change is queued and has not been applied yet. */
+        PENDING,
+        /** The change has been applied; status and result hold its outcome. */
+        COMPLETED,
+        /** Applying the change threw an error. */
+        FAILED
+    }
+
+    /**
+     * Creates the status of a queued change.
+     *
+     * @param id The operation ID.
+     * @return The pending status.
+     */
+    static OperationStatus pending(final long id) {
+        return new OperationStatus(id, State.PENDING, null, null);
+    }
+}
@@ -0,0 +1,208 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs full scans of the store, splitting large ones into chunks of neighbouring IDs that are
+ * filtered in parallel on a dedicated fork-join pool, so a big scan uses every core without taking
+ * over the common pool other parts of the JVM rely on. Scans smaller than the threshold stay on the
+ * calling thread, where splitting would cost more than it saves. Either way, matches come back in ID order.
+ * How often each path is taken, the parallel scans' duration and the pool's activity are published
+ * as metrics under mountain.scan.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class ParallelScanner {
+
+    private final int threshold;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+    private final Counter sequentialScans;
+    private final Counter parallelScans;
+    private final Counter chunks;
+    private final Timer parallelTime;
+
+    /**
+     * Creates the scanner.
+     *
+     * @param threshold The number of rows from which a scan is split up and run in parallel.
+     * @param chunkSize Roughly how many rows each parallel subtask filters.
+     * @param parallelism How many pool threads to run; 0 for one per available processor.
+     * @param registry Where the scan metrics are registered.
+     */
+    public ParallelScanner(@Value("${mountain.scan.parallel-threshold:50000}") final int threshold,
+                           @Value("${mountain.scan.chunk-size:4096}") final int chunkSize,
+                           @Value("${mountain.scan.parallelism:0}") final int parallelism,
+                           final MeterRegistry registry) {
+        this.threshold = threshold;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                ParallelScanner::newWorker, null, false);
+        this.sequentialScans = Counter.builder("mountain.scan.sequential")
+                .description("Scans small enough to run on the calling thread")
+                .register(registry);
+        this.parallelScans = Counter.builder("mountain.scan.parallel")
+                .description("Scans split into chunks and run on the scan pool")
+                .register(registry);
+        this.chunks = Counter.builder("mountain.scan.parallel.chunks")
+                .description("Chunks filtered by parallel scans")
+                .register(registry);
+        this.parallelTime = Timer.builder("mountain.scan.parallel.duration")
+                .description("How long parallel scans took")
+                .register(registry);
+        new ExecutorServiceMetrics(pool, "mountain.scan.pool", Tags.empty()).bindTo(registry);
+    }
+
+    /**
+     * Stops the pool's threads.
+     */
+    @PreDestroy
+    void stop() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Filters every row of a map, in parallel if it has at least the threshold number of rows.
+     *
+     * @param rows The rows to scan, by ID. The map may change while it is scanned.
+     * @param match Gives the result for a row, or null if the row does not match.
+     * @param <E> The row type.
+     * @param <R> The result type.
+     * @return The results of the matching rows, in ID order.
+     */
+    public <E, R> List<R> scan(final ConcurrentNavigableMap<Integer, E> rows, final Function<E, R> match) {
+        return scan(rows, ArrayList::new, (matches, row) -> {
+            final R result = match.apply(row);
+            if (result != null) {
+                matches.add(result);
+            }
+        }, (lower, upper) -> {
+            lower.addAll(upper);
+            return lower;
+        });
+    }
+
+    /**
+     * Folds every row of a map into a result, in parallel if it has at least the threshold number
+     * of rows: each chunk is folded into a result of its own, and neighbouring chunks' results are
+     * combined lower IDs first, so a result that only keeps what it needs stays that small.
+     *
+     * @param rows The rows to scan, by ID. The map may change while it is scanned.
+     * @param newResult Creates an empty result.
+     * @param accumulate Folds a row into a result.
+     * @param combine Combines the results of two neighbouring chunks, the lower first.
+     * @param <E> The row type.
+     * @param <A> The result type.
+     * @return The result.
+     */
+    public <E, A> A scan(final ConcurrentNavigableMap<Integer, E> rows, final Supplier<A> newResult,
+                         final BiConsumer<A, E> accumulate, final BinaryOperator<A> combine) {
+        final Map.Entry<Integer, E> first = rows.firstEntry();
+        final Map.Entry<Integer, E> last = rows.lastEntry();
+        // size() is only cheap on the whole map, so the threshold is checked before splitting it
+        if (first == null || last == null || rows.size() < threshold) {
+            sequentialScans.increment();
+            return scanChunk(rows.values(), newResult, accumulate);
+        }
+        parallelScans.increment();
+        return parallelTime.record(() -> pool.invoke(
+                new ChunkTask<>(rows, first.getKey(), (long) last.getKey() + 1, newResult, accumulate, combine)));
+    }
+
+    /**
+     * Folds the rows of one chunk.
+     *
+     * @param chunk The rows to fold.
+     * @param newResult Creates an empty result.
+     * @param accumulate Folds a row into a result.
+     * @param <E> The row type.
+     * @param <A> The result type.
+     * @return The chunk's result.
+     */
+    private static <E, A> A scanChunk(final Collection<E> chunk, final Supplier<A> newResult,
+                                      final BiConsumer<A, E> accumulate) {
+        final A result = newResult.get();
+        for (E row : chunk) {
+            accumulate.accept(result, row);
+        }
+        return result;
+    }
+
+    private static ForkJoinWorkerThread newWorker(final ForkJoinPool pool) {
+        final ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        worker.setName("mountain-scan-" + worker.getPoolIndex());
+        worker.setDaemon(true);
+        return worker;
+    }
+
+    /**
+     * Splits its ID range in two until it is no wider than a chunk, folding the lower half in a
+     * forked subtask and the upper half on this thread, and combines the halves in order. IDs
+     * are handed out densely, so a chunk's width is close to how many rows it holds.
+     */
+    private final class ChunkTask<E, A> extends RecursiveTask<A> {
+
+        private final ConcurrentNavigableMap<Integer, E> rows;
+        private final long from;
+        private final long to;
+        private final Supplier<A> newResult;
+        private final BiConsumer<A, E> accumulate;
+        private final BinaryOperator<A> combine;
+
+        /**
+         * Creates a task for the rows with IDs from one up to, but not including, another.
+         *
+         * @param rows All the rows.
+         * @param from The lowest ID in the chunk.
+         * @param to One past the highest ID in the chunk.
+         * @param newResult Creates an empty result.
+         * @param accumulate Folds a row into a result.
+         * @param combine Combines the results of two neighbouring chunks, the lower first.
+         */
+        private ChunkTask(final ConcurrentNavigableMap<Integer, E> rows, final long from, final long to,
+                          final Supplier<A> newResult, final BiConsumer<A, E> accumulate,
+                          final BinaryOperator<A> combine) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.newResult = newResult;
+            this.accumulate = accumulate;
+            this.combine = combine;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= chunkSize) {
+                chunks.increment();
+                return scanChunk(rows.subMap((int) from, true, (int) (to - 1), true).values(), newResult,
+                        accumulate);
+            }
+            final long middle = from + (to - from) / 2;
+            final ChunkTask<E, A> lower = new ChunkTask<>(rows, from, middle, newResult, accumulate, combine);
+            lower.fork();
+            final A upper = new ChunkTask<>(rows, middle, to, newResult, accumulate, combine).compute();
+            return combine.apply(lower.join(), upper);
+        }
+    }
+}
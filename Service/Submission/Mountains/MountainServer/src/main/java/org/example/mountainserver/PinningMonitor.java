@@ -0,0 +1,104 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier thread, which happens when they block
+ * inside a synchronized block or a native frame and stops the carrier running other virtual threads.
+ * Streams the JDK's own jdk.VirtualThreadPinned flight recorder events, logs each one with where it
+ * happened, and counts them under the mountain.virtual-threads.pinned metric.
+ * Only runs when virtual threads are enabled with spring.threads.virtual.enabled=true.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class PinningMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PinningMonitor.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int FRAMES_LOGGED = 8;
+
+    private final boolean enabled;
+    private final Duration threshold;
+    private final Counter pinnedCount;
+    private final Timer pinnedTime;
+    private RecordingStream stream;
+
+    /**
+     * Creates the monitor.
+     *
+     * @param virtualThreads Whether requests run on virtual threads.
+     * @param threshold How long a virtual thread must stay pinned before it is reported.
+     * @param registry Where the pinning metrics are registered.
+     */
+    public PinningMonitor(@Value("${spring.threads.virtual.enabled:false}") final boolean virtualThreads,
+                          @Value("${mountain.virtual-threads.pinned-threshold:PT0.02S}") final Duration threshold,
+                          final MeterRegistry registry) {
+        this.enabled = virtualThreads;
+        this.threshold = threshold;
+        this.pinnedCount = Counter.builder("mountain.virtual-threads.pinned")
+                .description("Virtual threads pinned to their carrier for longer than the threshold")
+                .register(registry);
+        this.pinnedTime = Timer.builder("mountain.virtual-threads.pinned.duration")
+                .description("How long virtual threads stayed pinned")
+                .register(registry);
+    }
+
+    /**
+     * Starts streaming pinning events if virtual threads are enabled.
+     */
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::report);
+        stream.startAsync();
+    }
+
+    /**
+     * Stops streaming pinning events.
+     */
+    @PreDestroy
+    void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * Counts and logs one pinning event.
+     *
+     * @param event The jdk.VirtualThreadPinned event.
+     */
+    private void report(final RecordedEvent event) {
+        pinnedCount.increment();
+        pinnedTime.record(event.getDuration());
+
+        final StringBuilder where = new StringBuilder();
+        if (event.getStackTrace() != null) {
+            for (RecordedFrame frame : event.getStackTrace().getFrames().stream().limit(FRAMES_LOGGED).toList()) {
+                where.append("\n\tat ").append(frame.getMethod().getType().getName()).append('.')
+                        .append(frame.getMethod().getName()).append(':').append(frame.getLineNumber());
+            }
+        }
+        LOG.warn("Virtual thread {} pinned to its carrier for {} ms{}",
+                event.getThread() == null ? "?" : event.getThread().getJavaName(),
+                event.getDuration().toMillis(), where);
+    }
+}
@@ -0,0 +1,208 @@
+package org.example.mountainserver;
+
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Compiles filter queries into predicates that test only the criteria a query actually gives.
+ * Criteria are parsed once per query rather than once per mountain. Each combination of given
+ * criteria, a query's shape, is composed once into a method handle that takes the criteria's values
+ * as arguments and tests them cheapest first. That handle is the class data of a hidden class
+ * defined for the shape from the {@link ShapePredicate} template, which keeps it in a static final
+ * field, so the JIT treats it as a constant and can inline the whole test into a scan; queries of
+ * that shape are instances of the class holding only their values.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class QueryCompiler {
+
+    private static final MethodHandle MATCH_ALL = MethodHandles.dropArguments(
+            MethodHandles.constant(boolean.class, true), 0, Mountain.class);
+
+    private static final byte[] TEMPLATE = readTemplate();
+
+    // the constructor of each shape's predicate class, (Object[]) to ShapePredicate
+    private final Map<Integer, MethodHandle> shapes = new ConcurrentHashMap<>();
+
+    /**
+     * The criteria a query can give, in the order they are tested: numbers before strings.
+     */
+    private enum Criterion {
+        ID("idIs", int.class),
+        ALTITUDE("altitudeAbove", int.class),
+        HEMISPHERE("northernIs", boolean.class),
+        COUNTRY("countryIs", String.class),
+        RANGE("rangeIs", String.class),
+        NAME("nameIs", String.class);
+
+        private final MethodHandle test;
+
+        Criterion(final String method, final Class<?> valueType) {
+            try {
+                this.test = MethodHandles.lookup().findStatic(QueryCompiler.class, method,
+                        MethodType.methodType(boolean.class, Mountain.class, valueType));
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    /**
+     * Compiles a query. Its criteria must already have been validated.
+     *
+     * @param query The query; a null criterion matches every mountain.
+     * @return The compiled query.
+     */
+    public CompiledQuery compile(final MountainQuery query) {
+        final Integer altitude = query.altitude() == null ? null : Integer.valueOf(query.altitude());
+        final Boolean northern = query.hemisphere() == null ? null : Boolean.valueOf(query.hemisphere());
+        final Object[] values = {
+            query.id() == null ? null : Integer.valueOf(query.id()), altitude, northern,
+            query.country(), query.range(), query.name()
+        };
+        final Object[] otherValues = values.clone();
+        otherValues[Criterion.ALTITUDE.ordinal()] = null;
+        otherValues[Criterion.HEMISPHERE.ordinal()] = null;
+        return new CompiledQuery(bind(values), new ColumnFilter(altitude, northern), bind(otherValues));
+    }
+
+    /**
+     * Creates an instance of the predicate class for a query's shape holding the query's values.
+     *
+     * @param values Each criterion's parsed value, or null if not given, in criterion order.
+     * @return A predicate testing the given criteria.
+     */
+    @SuppressWarnings("unchecked")
+    private Predicate<Mountain> bind(final Object[] values) {
+        int shape = 0;
+        final List<Object> given = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                shape |= 1 << i;
+                given.add(values[i]);
+            }
+        }
+        final MethodHandle create = shapes.computeIfAbsent(shape, QueryCompiler::defineShape);
+        try {
+            return (Predicate<Mountain>) create.invoke(given.toArray());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Defines the predicate class for one shape, with the shape's test spread over an array of
+     * values as its class data.
+     *
+     * @param shape A bit per criterion, set if the criterion is given.
+     * @return The constructor of the class, (Object[]) to ShapePredicate.
+     */
+    private static MethodHandle defineShape(final int shape) {
+        final MethodHandle test = composeShape(shape);
+        final int count = test.type().parameterCount() - 1;
+        final MethodHandle spread = test.asType(MethodType.genericMethodType(count + 1)
+                .changeParameterType(0, Mountain.class).changeReturnType(boolean.class))
+                .asSpreader(Object[].class, count);
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClassWithClassData(TEMPLATE,
+                    spread, true);
+            return lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class, Object[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Composes the handle for one shape: (Mountain, value...) to boolean, where each test only runs
+     * if the ones before it passed.
+     *
+     * @param shape A bit per criterion, set if the criterion is given.
+     * @return The composed handle.
+     */
+    private static MethodHandle composeShape(final int shape) {
+        final List<MethodHandle> tests = new ArrayList<>();
+        for (Criterion criterion : Criterion.values()) {
+            if ((shape & (1 << criterion.ordinal())) != 0) {
+                tests.add(criterion.test);
+            }
+        }
+        if (tests.isEmpty()) {
+            return MATCH_ALL;
+        }
+        MethodHandle all = tests.get(tests.size() - 1);
+        for (int i = tests.size() - 2; i >= 0; i--) {
+            all = and(tests.get(i), all);
+        }
+        return all;
+    }
+
+    /**
+     * Combines two tests into (Mountain, first's values..., second's values...) to boolean,
+     * running the second only if the first passes.
+     *
+     * @param first The test to run first.
+     * @param second The test to run if the first passes.
+     * @return The combined test.
+     */
+    private static MethodHandle and(final MethodHandle first, final MethodHandle second) {
+        final List<Class<?>> firstValues = first.type().parameterList().subList(1, first.type().parameterCount());
+        final MethodHandle then = MethodHandles.dropArguments(second, 1, firstValues);
+        final MethodHandle otherwise = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false), 0,
+                then.type().parameterList());
+        return MethodHandles.guardWithTest(first, then, otherwise);
+    }
+
+    private static boolean idIs(final Mountain mountain, final int id) {
+        return mountain.getId() == id;
+    }
+
+    private static boolean altitudeAbove(final Mountain mountain, final int altitude) {
+        return mountain.getAltitude() > altitude;
+    }
+
+    private static boolean northernIs(final Mountain mountain, final boolean northern) {
+        return mountain.getIsNorthern() == northern;
+    }
+
+    private static boolean countryIs(final Mountain mountain, final String country) {
+        return country.equals(mountain.getCountry());
+    }
+
+    private static boolean rangeIs(final Mountain mountain, final String range) {
+        return range.equals(mountain.getRange());
+    }
+
+    private static boolean nameIs(final Mountain mountain, final String name) {
+        return name.equals(mountain.getName());
+    }
+
+    /**
+     * Reads the class file of the predicate template.
+     *
+     * @return Its bytes.
+     */
+    private static byte[] readTemplate() {
+        try (InputStream in = QueryCompiler.class.getResourceAsStream("ShapePredicate.class")) {
+            if (in == null) {
+                throw new IllegalStateException("The ShapePredicate class file is missing");
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.example.mountainserver;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The access path the planner chose for a query, with the alternatives it weighed, ready to run
+ * against a snapshot. Every path but the full scan gathers candidate IDs from the indexes and then
+ * checks each candidate's visible version against the whole query. A plan for the highest
+ * mountains may instead walk the altitude index from the top; any other path feeds its matches
+ * through a bounded heap.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class QueryPlan {
+
+    /**
+     * The ways the planner can find a query's mountains.
+     */
+    public enum AccessPath {
+        /** Fetch the one mountain the query names by ID. */
+        ID_LOOKUP,
+        /** Look up the query's values in a secondary index. */
+        INDEX_SEEK,
+        /** Seek past the query's altitude in the altitude index. */
+        ALTITUDE_SEEK,
+        /** Intersect the candidates of a secondary index seek and an altitude seek. */
+        BITMAP_INTERSECTION,
+        /** Test every mountain. */
+        FULL_SCAN,
+        /** Walk the altitude index from the top until enough mountains match; only for the highest mountains. */
+        ALTITUDE_ORDER
+    }
+
+    /**
+     * An access path the planner considered.
+     *
+     * @param accessPath The access path.
+     * @param index The secondary index it uses, or null.
+     * @param estimatedCost Its estimated cost, in rows scanned.
+     * @param estimatedCandidates How many mountains it was estimated to check.
+     */
+    public record Alternative(AccessPath accessPath, String index, double estimatedCost, long estimatedCandidates) {
+    }
+
+    /**
+     * The outcome of running a plan.
+     *
+     * @param mountains The matching mountains, in the order they were added.
+     * @param candidates How many mountains were checked against the query.
+     * @param accessNanos Time spent gathering candidates from the indexes.
+     * @param filterNanos Time spent checking candidates, or scanning.
+     */
+    public record Execution(List<Mountain> mountains, long candidates, long accessNanos, long filterNanos) {
+    }
+
+    /**
+     * What explain=true returns: the chosen plan, its estimates against what actually happened,
+     * and where the time went.
+     *
+     * @param accessPath The chosen access path.
+     * @param index The secondary index it used, or null.
+     * @param estimatedCost The chosen path's estimated cost.
+     * @param estimatedRows How many matches were estimated.
+     * @param actualRows How many mountains matched.
+     * @param estimatedCandidates How many mountains the path was estimated to check.
+     * @param actualCandidates How many it checked.
+     * @param considered Every path considered, cheapest first.
+     * @param timings Where the time went.
+     */
+    public record Explanation(AccessPath accessPath, String index, double estimatedCost, long estimatedRows,
+                              long actualRows, long estimatedCandidates, long actualCandidates,
+                              List<Alternative> considered, Timings timings) {
+    }
+
+    /**
+     * Time spent on each stage of a query, in microseconds.
+     *
+     * @param plan Choosing the plan.
+     * @param access Gathering candidates from the indexes.
+     * @param filter Checking the candidates, or scanning.
+     * @param total All of it.
+     */
+    public record Timings(long plan, long access, long filter, long total) {
+    }
+
+    private final CompiledQuery query;
+    private final Alternative chosen;
+    private final List<Alternative> considered;
+    private final long estimatedRows;
+    private final Supplier<BitSet> candidates;
+
+    /**
+     * Creates a plan.
+     *
+     * @param query The compiled query.
+     * @param chosen The chosen access path.
+     * @param considered Every path considered, cheapest first.
+     * @param estimatedRows How many matches are estimated.
+     * @param candidates Gathers the candidate IDs, or null for a full scan.
+     */
+    QueryPlan(final CompiledQuery query, final Alternative chosen, final List<Alternative> considered,
+              final long estimatedRows, final Supplier<BitSet> candidates) {
+        this.query = query;
+        this.chosen = chosen;
+        this.considered = List.copyOf(considered);
+        this.estimatedRows = estimatedRows;
+        this.candidates = candidates;
+    }
+
+    /**
+     * Gets the chosen access path.
+     *
+     * @return The access path.
+     */
+    public AccessPath accessPath() {
+        return chosen.accessPath();
+    }
+
+    /**
+     * Runs the plan.
+     *
+     * @param snapshot The snapshot to read.
+     * @return The matches, with counts and timings.
+     */
+    public Execution execute(final MountainStore.Snapshot snapshot) {
+        final long start = System.nanoTime();
+        if (candidates == null) {
+            final List<Mountain> matches = snapshot.query(query.columns(), query.otherColumns());
+            // a scan checks every mountain, which the statistics counted when planning
+            return new Execution(matches, chosen.estimatedCandidates(), 0, System.nanoTime() - start);
+        }
+        final BitSet ids = candidates.get();
+        final long accessed = System.nanoTime();
+        final List<Mountain> matches = new ArrayList<>();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            final Mountain mountain = snapshot.get(id);
+            if (mountain != null && query.filter().test(mountain)) {
+                matches.add(mountain);
+            }
+        }
+        return new Execution(matches, ids.cardinality(), accessed - start, System.nanoTime() - accessed);
+    }
+
+    /**
+     * Runs the plan for the highest mountains only, without keeping the rest of the matches.
+     *
+     * @param snapshot The snapshot to read.
+     * @param k How many mountains to return.
+     * @return At most k matching mountains, highest first, equally high ones by ID.
+     */
+    public List<Mountain> top(final MountainStore.Snapshot snapshot, final int k) {
+        if (chosen.accessPath() == AccessPath.ALTITUDE_ORDER) {
+            final Integer above = query.columns().altitudeAbove();
+            return snapshot.highest(query.filter(), above == null ? Integer.MIN_VALUE : above, k);
+        }
+        if (candidates == null) {
+            return snapshot.highestScanned(query.filter(), k);
+        }
+        final TopK<Mountain> top = new TopK<>(k, TopK.HIGHEST_FIRST);
+        final BitSet ids = candidates.get();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            final Mountain mountain = snapshot.get(id);
+            if (mountain != null && query.filter().test(mountain)) {
+                top.offer(mountain);
+            }
+        }
+        return top.best();
+    }
+
+    /**
+     * Describes the plan and how running it went.
+     *
+     * @param execution The outcome of running it.
+     * @param planNanos Time spent choosing it.
+     * @return The explanation.
+     */
+    public Explanation explain(final Execution execution, final long planNanos) {
+        return new Explanation(chosen.accessPath(), chosen.index(), chosen.estimatedCost(), estimatedRows,
+                execution.mountains().size(), chosen.estimatedCandidates(), execution.candidates(), considered,
+                new Timings(micros(planNanos), micros(execution.accessNanos()), micros(execution.filterNanos()),
+                        micros(planNanos + execution.accessNanos() + execution.filterNanos())));
+    }
+
+    private static long micros(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,170 @@
+package org.example.mountainserver;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Cost-based planner for the multi-version store's filter queries. For each query it estimates
+ * the cost of every access path the query and the indexes allow - an ID lookup, a secondary index
+ * seek, an altitude seek, the intersection of the two, or a full scan - from the store's
+ * statistics, and picks the cheapest. Costs are in rows scanned: following an index entry to its
+ * mountain costs several times more than testing the next mountain in a scan.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class QueryPlanner {
+
+    private static final double SCAN_ROW_COST = 1;
+    static final double PROBE_COST = 4;
+    private static final double BITMAP_BIT_COST = 0.5;
+    private static final double SEEK_COST = 10;
+
+    private final MountainStore store;
+
+    /**
+     * Creates the planner.
+     *
+     * @param store The store whose indexes and statistics are used.
+     */
+    public QueryPlanner(final MountainStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Plans a query.
+     *
+     * @param query The query's criteria, already validated.
+     * @param compiled The compiled query.
+     * @return The cheapest plan.
+     */
+    public QueryPlan plan(final MountainQuery query, final CompiledQuery compiled) {
+        return plan(query, compiled, 0);
+    }
+
+    /**
+     * Plans a query for only its highest mountains. Walking the altitude index from the top is
+     * weighed against the other paths: it is estimated to check as many mountains as it takes,
+     * at the query's estimated density of matches, to find k of them.
+     *
+     * @param query The query's criteria, already validated.
+     * @param compiled The compiled query.
+     * @param k How many mountains are wanted.
+     * @return The cheapest plan, to be run with {@link QueryPlan#top}.
+     */
+    public QueryPlan planTop(final MountainQuery query, final CompiledQuery compiled, final int k) {
+        return plan(query, compiled, k);
+    }
+
+    private QueryPlan plan(final MountainQuery query, final CompiledQuery compiled, final int k) {
+        final MountainIndexes indexes = store.indexes();
+        final TableStatistics statistics = indexes.statistics();
+        final long rows = statistics.rows();
+        final double estimatedRows = estimateRows(query, statistics);
+        final List<Candidate> candidates = new ArrayList<>();
+
+        candidates.add(new Candidate(new QueryPlan.Alternative(QueryPlan.AccessPath.FULL_SCAN, null,
+                rows * SCAN_ROW_COST, rows), null));
+
+        if (query.id() != null) {
+            final int id = Integer.parseInt(query.id());
+            candidates.add(new Candidate(new QueryPlan.Alternative(QueryPlan.AccessPath.ID_LOOKUP, null,
+                    PROBE_COST, 1), () -> {
+                final BitSet ids = new BitSet();
+                // only IDs the store has handed out are set, so a bitmap is never sized by a made-up ID
+                if (store.hasVersions(id)) {
+                    ids.set(id);
+                }
+                return ids;
+            }));
+        }
+
+        final double altitudeSelectivity = query.altitude() == null
+                ? 1 : statistics.selectivityAbove(Integer.parseInt(query.altitude()));
+        final double altitudeCandidates = rows * altitudeSelectivity;
+        if (query.altitude() != null) {
+            final int altitude = Integer.parseInt(query.altitude());
+            candidates.add(new Candidate(new QueryPlan.Alternative(QueryPlan.AccessPath.ALTITUDE_SEEK, null,
+                    SEEK_COST + altitudeCandidates * PROBE_COST, Math.round(altitudeCandidates)),
+                    () -> indexes.altitudeIndex().above(altitude)));
+        }
+
+        for (SecondaryIndex index : indexes.secondaryIndexes()) {
+            final int prefix = index.usablePrefix(query);
+            if (prefix == 0 || !index.isReady()) {
+                continue;
+            }
+            double indexSelectivity = 1;
+            for (Column column : index.columns().subList(0, prefix)) {
+                indexSelectivity *= statistics.selectivity(column, column.criterionOf(query));
+            }
+            final double indexCandidates = rows * indexSelectivity;
+            candidates.add(new Candidate(new QueryPlan.Alternative(QueryPlan.AccessPath.INDEX_SEEK, index.name(),
+                    SEEK_COST + indexCandidates * PROBE_COST, Math.round(indexCandidates)),
+                    () -> index.lookup(query, prefix)));
+
+            if (query.altitude() != null) {
+                final int altitude = Integer.parseInt(query.altitude());
+                final double both = indexCandidates * altitudeSelectivity;
+                candidates.add(new Candidate(new QueryPlan.Alternative(QueryPlan.AccessPath.BITMAP_INTERSECTION,
+                        index.name(), 2 * SEEK_COST + (indexCandidates + altitudeCandidates) * BITMAP_BIT_COST
+                        + both * PROBE_COST, Math.round(both)), () -> {
+                    final BitSet ids = index.lookup(query, prefix);
+                    ids.and(indexes.altitudeIndex().above(altitude));
+                    return ids;
+                }));
+            }
+        }
+
+        if (k > 0) {
+            final double above = rows * altitudeSelectivity;
+            final double walked = estimatedRows <= 0 ? above : Math.min(above, k * above / estimatedRows);
+            candidates.add(new Candidate(new QueryPlan.Alternative(QueryPlan.AccessPath.ALTITUDE_ORDER, null,
+                    SEEK_COST + walked * PROBE_COST, Math.round(walked)), null));
+        }
+
+        candidates.sort(Comparator.comparingDouble(candidate -> candidate.alternative().estimatedCost()));
+        final List<QueryPlan.Alternative> considered = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            considered.add(candidate.alternative());
+        }
+        final Candidate cheapest = candidates.get(0);
+        return new QueryPlan(compiled, cheapest.alternative(), considered,
+                Math.round(estimatedRows), cheapest.gather());
+    }
+
+    /**
+     * Estimates how many mountains match a query, treating its criteria as independent.
+     *
+     * @param query The query.
+     * @param statistics The statistics to estimate from.
+     * @return The estimated number of matches.
+     */
+    private static double estimateRows(final MountainQuery query, final TableStatistics statistics) {
+        double matches = statistics.rows();
+        for (Column column : Column.values()) {
+            final String value = column.criterionOf(query);
+            if (value != null) {
+                matches *= statistics.selectivity(column, value);
+            }
+        }
+        if (query.altitude() != null) {
+            matches *= statistics.selectivityAbove(Integer.parseInt(query.altitude()));
+        }
+        return query.id() == null ? matches : Math.min(1, matches);
+    }
+
+    /**
+     * An access path being weighed, with how to gather its candidates.
+     *
+     * @param alternative The access path and its estimates.
+     * @param gather Gathers its candidate IDs, or null for a full scan.
+     */
+    private record Candidate(QueryPlan.Alternative alternative, Supplier<BitSet> gather) {
+    }
+}
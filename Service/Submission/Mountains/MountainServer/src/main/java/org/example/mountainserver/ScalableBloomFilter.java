@@ -0,0 +1,199 @@
+package org.example.mountainserver;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bloom filter that grows with what is added to it. It is a chain of plain filters ("slices"): once
+ * the newest slice holds as many keys as it was sized for, another slice twice its size, with half
+ * its false-positive probability, is added, so the overall false-positive probability stays below
+ * twice the first slice's however many keys are added. Keys are 64-bit hashes, spread across a
+ * slice's bits by double hashing. Nothing is ever removed, so a key that was once added always
+ * tests positive. Lookups take no lock; adds only lock to add a slice.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class ScalableBloomFilter {
+
+    private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+
+    private final List<Slice> slices = new CopyOnWriteArrayList<>();
+    private final AtomicLong keys = new AtomicLong();
+    private final Lock slicesLock = new ReentrantLock();
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param initialCapacity How many keys the first slice is sized for.
+     * @param falsePositiveRate The false-positive probability aimed for overall.
+     */
+    public ScalableBloomFilter(final int initialCapacity, final double falsePositiveRate) {
+        // each slice halves the last one's rate, so the rates add up to at most twice the first's
+        slices.add(new Slice(Math.max(1, initialCapacity), falsePositiveRate / 2));
+    }
+
+    /**
+     * Hashes a string key to the 64 bits the filter works on.
+     *
+     * @param key The key.
+     * @return The hash.
+     */
+    public static long hash(final CharSequence key) {
+        // 64-bit FNV-1a, finished with a mix so similar keys spread across every bit
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Hashes a number key to the 64 bits the filter works on.
+     *
+     * @param key The key.
+     * @return The hash.
+     */
+    public static long hash(final long key) {
+        return mix(key + 0x9e3779b97f4a7c15L);
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @param hash The key's hash.
+     */
+    public void add(final long hash) {
+        // a key that already tests positive would not change any answer, so it takes no room
+        if (mightContain(hash)) {
+            return;
+        }
+        Slice newest = slices.get(slices.size() - 1);
+        if (newest.added.get() >= newest.capacity) {
+            slicesLock.lock();
+            try {
+                newest = slices.get(slices.size() - 1);
+                if (newest.added.get() >= newest.capacity) {
+                    newest = new Slice(newest.capacity * 2, newest.falsePositiveRate / 2);
+                    slices.add(newest);
+                }
+            } finally {
+                slicesLock.unlock();
+            }
+        }
+        newest.add(hash);
+        keys.incrementAndGet();
+    }
+
+    /**
+     * Checks whether a key may have been added.
+     *
+     * @param hash The key's hash.
+     * @return False only if the key has definitely never been added.
+     */
+    public boolean mightContain(final long hash) {
+        for (Slice slice : slices) {
+            if (slice.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets roughly how many distinct keys have been added.
+     *
+     * @return The number of keys added that did not already test positive.
+     */
+    public long keys() {
+        return keys.get();
+    }
+
+    /**
+     * Gets how many slices the filter has grown to.
+     *
+     * @return The number of slices.
+     */
+    public int slices() {
+        return slices.size();
+    }
+
+    /**
+     * Estimates the chance that a key never added tests positive, from how full each slice is.
+     *
+     * @return The estimated false-positive probability.
+     */
+    public double expectedFalsePositiveRate() {
+        double allNegative = 1;
+        for (Slice slice : slices) {
+            allNegative *= 1 - Math.pow(slice.fill(), slice.hashes);
+        }
+        return 1 - allNegative;
+    }
+
+    private static long mix(final long value) {
+        long z = value;
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * A plain bloom filter sized for a number of keys at a false-positive probability.
+     */
+    private static final class Slice {
+
+        private final long capacity;
+        private final double falsePositiveRate;
+        private final int hashes;
+        private final long bits;
+        private final AtomicLongArray words;
+        private final AtomicLong added = new AtomicLong();
+
+        private Slice(final long capacity, final double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            this.hashes = Math.max(1, (int) Math.ceil(-Math.log(falsePositiveRate) / Math.log(2)));
+            final long wanted = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / LN2_SQUARED);
+            this.words = new AtomicLongArray((int) Math.max(1, (wanted + Long.SIZE - 1) / Long.SIZE));
+            this.bits = (long) words.length() * Long.SIZE;
+        }
+
+        private void add(final long hash) {
+            final long step = (hash >>> 32) | 1;
+            long combined = hash;
+            for (int i = 0; i < hashes; i++) {
+                final long bit = Math.floorMod(combined, bits);
+                final long mask = 1L << bit;
+                words.getAndAccumulate((int) (bit >>> 6), mask, (word, set) -> word | set);
+                combined += step;
+            }
+            added.incrementAndGet();
+        }
+
+        private boolean mightContain(final long hash) {
+            final long step = (hash >>> 32) | 1;
+            long combined = hash;
+            for (int i = 0; i < hashes; i++) {
+                final long bit = Math.floorMod(combined, bits);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+                combined += step;
+            }
+            return true;
+        }
+
+        private double fill() {
+            long set = 0;
+            for (int i = 0; i < words.length(); i++) {
+                set += Long.bitCount(words.get(i));
+            }
+            return set / (double) bits;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.mountainserver;
+
+/**
+ * Scan kernel that compares one row at a time, for JVMs without the vector module.
+ * @author 2014459
+ * @version 1.0
+ */
+final class ScalarScanKernel implements ScanKernel {
+
+    @Override
+    public long[] select(final MountainColumns columns, final ColumnFilter filter) {
+        final int[] altitudes = columns.altitudes();
+        final boolean[] northern = columns.northern();
+        final long[] selection = new long[(columns.size() + Long.SIZE - 1) / Long.SIZE];
+        for (int i = 0; i < columns.size(); i++) {
+            if (filter.test(altitudes[i], northern[i])) {
+                selection[i >>> 6] |= 1L << i;
+            }
+        }
+        return selection;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
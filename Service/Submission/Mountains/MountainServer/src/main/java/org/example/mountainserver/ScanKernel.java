@@ -0,0 +1,43 @@
+package org.example.mountainserver;
+
+/**
+ * Evaluates a column filter over every row of a set of columns, producing a selection bitmap with
+ * bit {@code i % 64} of word {@code i / 64} set when row {@code i} matches.
+ * The vector kernel is used when the JVM was started with {@code --add-modules jdk.incubator.vector};
+ * otherwise the scalar one is, with the same results.
+ * @author 2014459
+ * @version 1.0
+ */
+public interface ScanKernel {
+
+    /** The incubating module the vector kernel needs. */
+    String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * Picks the fastest kernel this JVM can run.
+     *
+     * @return The vector kernel if its module is present, the scalar kernel otherwise.
+     */
+    static ScanKernel best() {
+        // only touch the vector kernel's class once its module is known to be there
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()
+                ? new VectorScanKernel()
+                : new ScalarScanKernel();
+    }
+
+    /**
+     * Selects the rows matching a filter.
+     *
+     * @param columns The columns to scan.
+     * @param filter The filter to match.
+     * @return The selection bitmap.
+     */
+    long[] select(MountainColumns columns, ColumnFilter filter);
+
+    /**
+     * Gets the kernel's name, for logging.
+     *
+     * @return The name.
+     */
+    String name();
+}
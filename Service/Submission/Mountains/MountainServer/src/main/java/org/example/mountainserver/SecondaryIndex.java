@@ -0,0 +1,198 @@
+package org.example.mountainserver;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Ordered index from the values of one or more columns to the IDs of the mountains with those
+ * values. Like a B-tree on several columns, it can look up any leading run of its columns, so an
+ * index on (country, range) also serves queries on country alone.
+ * Entries are added as soon as a version is written but only removed once no version of the
+ * mountain with that key is left, so every snapshot still open finds what it can see; lookups
+ * return candidates that the caller checks against the snapshot.
+ * An index built for the workload starts out not ready: writes already keep it up to date, but
+ * the planner only uses it once every existing version has been added.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class SecondaryIndex {
+
+    // sorts below every character a value can hold, so a prefix's keys are contiguous
+    private static final char SEPARATOR = '\u0000';
+    private static final char PAST_SEPARATOR = '\u0001';
+
+    private final List<Column> columns;
+    private final boolean automatic;
+    private final ConcurrentSkipListMap<String, Set<Integer>> entries = new ConcurrentSkipListMap<>();
+    private volatile boolean ready;
+    private volatile long lastUsedNanos = System.nanoTime();
+
+    /**
+     * Creates an empty index.
+     *
+     * @param columns The indexed columns, most significant first.
+     * @param automatic True if it was built for the workload and may be dropped when idle; such an
+     * index is not ready until {@link #markReady()} is called.
+     */
+    public SecondaryIndex(final List<Column> columns, final boolean automatic) {
+        this.columns = List.copyOf(columns);
+        this.automatic = automatic;
+        this.ready = !automatic;
+    }
+
+    /**
+     * Checks whether the index was built for the workload.
+     *
+     * @return True if it may be dropped when idle.
+     */
+    public boolean isAutomatic() {
+        return automatic;
+    }
+
+    /**
+     * Checks whether the index holds every mountain and can be used.
+     *
+     * @return True once it is complete.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Marks the index complete.
+     */
+    void markReady() {
+        lastUsedNanos = System.nanoTime();
+        ready = true;
+    }
+
+    /**
+     * Gets when the index was last looked up, or completed if it has not been looked up since.
+     *
+     * @return The time, from System.nanoTime().
+     */
+    public long lastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    /**
+     * Gets the indexed columns.
+     *
+     * @return The columns, most significant first.
+     */
+    public List<Column> columns() {
+        return columns;
+    }
+
+    /**
+     * Gets a readable name for the index, such as "(COUNTRY, RANGE)".
+     *
+     * @return The name.
+     */
+    public String name() {
+        return columns.toString().replace('[', '(').replace(']', ')');
+    }
+
+    /**
+     * Checks whether a lookup on the index can use exactly these columns as its prefix.
+     *
+     * @param wanted The columns a query gives values for.
+     * @return True if the index's first columns are the wanted ones, in any order.
+     */
+    public boolean serves(final Set<Column> wanted) {
+        return wanted.size() <= columns.size() && wanted.containsAll(columns.subList(0, wanted.size()));
+    }
+
+    /**
+     * Counts how many of the index's leading columns a query gives a value for.
+     *
+     * @param query The query.
+     * @return The length of the usable prefix; 0 if the index cannot help.
+     */
+    public int usablePrefix(final MountainQuery query) {
+        int prefix = 0;
+        while (prefix < columns.size() && columns.get(prefix).criterionOf(query) != null) {
+            prefix++;
+        }
+        return prefix;
+    }
+
+    /**
+     * Adds a mountain's entry.
+     *
+     * @param id The mountain's ID.
+     * @param mountain The mountain's version.
+     */
+    public void add(final int id, final Mountain mountain) {
+        entries.computeIfAbsent(keyOf(mountain), key -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    /**
+     * Removes a mountain's entry for the key of one of its versions.
+     *
+     * @param id The mountain's ID.
+     * @param mountain The version whose key should no longer lead to the mountain.
+     */
+    public void remove(final int id, final Mountain mountain) {
+        entries.computeIfPresent(keyOf(mountain), (key, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * Checks whether two versions of a mountain have the same key in this index.
+     *
+     * @param a One version.
+     * @param b The other version.
+     * @return True if the keys are the same.
+     */
+    public boolean sameKey(final Mountain a, final Mountain b) {
+        for (Column column : columns) {
+            if (!column.valueOf(a).equals(column.valueOf(b))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the IDs of mountains whose leading columns match a query's values.
+     *
+     * @param query The query, giving values for at least the first prefix columns.
+     * @param prefix How many leading columns to match.
+     * @return The candidate IDs.
+     */
+    public BitSet lookup(final MountainQuery query, final int prefix) {
+        lastUsedNanos = System.nanoTime();
+        final StringBuilder from = new StringBuilder();
+        for (int i = 0; i < prefix; i++) {
+            from.append(columns.get(i).criterionOf(query)).append(SEPARATOR);
+        }
+        final String to = from.substring(0, from.length() - 1) + PAST_SEPARATOR;
+        final BitSet ids = new BitSet();
+        for (Set<Integer> matching : entries.subMap(from.toString(), true, to, false).values()) {
+            for (int id : matching) {
+                ids.set(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Builds a mountain's key.
+     *
+     * @param mountain The mountain.
+     * @return The key.
+     */
+    private String keyOf(final Mountain mountain) {
+        final StringBuilder key = new StringBuilder();
+        for (Column column : columns) {
+            key.append(column.valueOf(mountain)).append(SEPARATOR);
+        }
+        return key.toString();
+    }
+}
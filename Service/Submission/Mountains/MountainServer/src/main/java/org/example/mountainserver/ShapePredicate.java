@@ -0,0 +1,55 @@
+package org.example.mountainserver;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.function.Predicate;
+
+/**
+ * Template for the predicates the query compiler generates, never loaded under its own name. Its
+ * class file is defined again as a hidden class for each query shape, with that shape's test as
+ * the class data, so every shape gets its own class whose test is a static final constant the JIT
+ * can inline; an instance only carries the values of one query.
+ * @author 2014459
+ * @version 1.0
+ */
+final class ShapePredicate implements Predicate<Mountain> {
+
+    /** The shape's (Mountain, Object[]) to boolean test, spreading the values over its criteria. */
+    private static final MethodHandle TEST = classData();
+
+    private final Object[] values;
+
+    /**
+     * Creates a predicate for one query.
+     *
+     * @param values The values of the criteria the query gives, in the order they are tested.
+     */
+    ShapePredicate(final Object[] values) {
+        this.values = values;
+    }
+
+    @Override
+    public boolean test(final Mountain mountain) {
+        try {
+            return (boolean) TEST.invokeExact(mountain, values);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets the test this copy of the class was defined with.
+     *
+     * @return The test.
+     */
+    private static MethodHandle classData() {
+        try {
+            return MethodHandles.classData(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, MethodHandle.class);
+        } catch (IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
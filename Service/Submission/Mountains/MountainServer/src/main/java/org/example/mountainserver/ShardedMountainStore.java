@@ -0,0 +1,766 @@
+package org.example.mountainserver;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Shard-per-core alternative to the shared, multi-version store. The mountains are split across
+ * shards, each owned by one thread that keeps them in plain, unsynchronised maps. Request threads
+ * never touch shard data: they post each operation to the owning shard's lock-free inbox and wait
+ * for the reply. Queries fan out to every shard as subtasks of one scope: they scan in parallel, the
+ * first failure or the query deadline ends the whole query, and subtasks still queued or scanning
+ * stop as soon as the query is over, for whatever reason. Their answers are merged back into the
+ * order the mountains were added in.
+ * A mountain lives on the shard encoded in its ID, while the natural key index used by add and
+ * upsert is split by the hash of the key, and the owner keeps it up to date with messages.
+ * Snapshots and as-of reads are not available in this mode.
+ * Enabled by setting mountain.store-mode=sharded.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class ShardedMountainStore {
+
+    private static final String SHARDED_MODE = "sharded";
+    private static final int SPINS_BEFORE_PARKING = 100;
+    private static final int SCAN_CHECK_INTERVAL = 1024;
+    private static final Comparator<Stored> HIGHEST_FIRST =
+            Comparator.comparing(Stored::mountain, TopK.HIGHEST_FIRST);
+
+    private final boolean enabled;
+    private final Shard[] shards;
+    private final Duration queryDeadline;
+    private final AtomicLong addOrder = new AtomicLong();
+
+    /**
+     * Creates the store.
+     *
+     * @param storeMode "sharded" to use this store, anything else to leave it idle.
+     * @param shardCount How many shards, and threads, to run; 0 for one per available processor.
+     * @param queryDeadline How long a query may take across all shards before it is abandoned.
+     * @param idAllocator Where new mountains' IDs come from.
+     */
+    public ShardedMountainStore(@Value("${mountain.store-mode:mvcc}") final String storeMode,
+                                @Value("${mountain.shards.count:0}") final int shardCount,
+                                @Value("${mountain.shards.query-deadline:PT5S}") final Duration queryDeadline,
+                                final IdAllocator idAllocator) {
+        this.enabled = SHARDED_MODE.equalsIgnoreCase(storeMode);
+        this.queryDeadline = queryDeadline;
+        final int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i, idAllocator.newPartition());
+        }
+    }
+
+    /**
+     * Starts one thread per shard if the sharded mode is enabled.
+     */
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            for (Shard shard : shards) {
+                shard.thread = Thread.ofPlatform().name("mountain-shard-" + shard.index).daemon().start(shard);
+            }
+        }
+    }
+
+    /**
+     * Stops the shard threads; operations still queued are not run.
+     */
+    @PreDestroy
+    void stop() {
+        for (Shard shard : shards) {
+            if (shard.thread != null) {
+                shard.thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Whether requests should be served by this store rather than the multi-version one.
+     *
+     * @return True if the sharded mode is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the mountains matching a filter from every shard, waiting for the answer.
+     *
+     * @param filter The filter to match.
+     * @return The matching mountains with their versions, in the order they were added.
+     */
+    public List<Stored> query(final Predicate<Mountain> filter) {
+        return await(queryAll(List.of(filter))).get(0);
+    }
+
+    /**
+     * Runs several filters, sending them to each shard in a single message. Cancelling the returned
+     * future, for example because the client has gone, stops every shard's part of the query.
+     *
+     * @param filters The filters to match.
+     * @return One list of matching mountains per filter, in the order given, each in the order they were
+     * added; completed with a TimeoutException if the query deadline passes first.
+     */
+    public CompletableFuture<List<List<Stored>>> queryAll(final List<Predicate<Mountain>> filters) {
+        return fanOut((shard, cancelled) -> shard.query(filters, cancelled)).thenApply(perShard -> {
+            final List<List<Stored>> results = new ArrayList<>(filters.size());
+            for (int i = 0; i < filters.size(); i++) {
+                final List<Stored> matches = new ArrayList<>();
+                for (List<List<Stored>> shardResults : perShard) {
+                    matches.addAll(shardResults.get(i));
+                }
+                matches.sort(Comparator.comparingLong(Stored::addedAt));
+                results.add(matches);
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Gets the highest mountains matching a filter. Each shard keeps only its own highest k while
+     * it scans, and the shards' heaps are merged, so no more than k mountains per shard are sent back.
+     *
+     * @param filter The filter to match.
+     * @param k How many mountains to return.
+     * @return At most k matching mountains, highest first, equally high ones by ID; completed with a
+     * TimeoutException if the query deadline passes first.
+     */
+    public CompletableFuture<List<Stored>> top(final Predicate<Mountain> filter, final int k) {
+        return fanOut((shard, cancelled) -> shard.top(filter, k, cancelled)).thenApply(perShard -> {
+            final TopK<Stored> top = new TopK<>(k, HIGHEST_FIRST);
+            for (TopK<Stored> shardTop : perShard) {
+                top.offerAll(shardTop);
+            }
+            return top.best();
+        });
+    }
+
+    /**
+     * Gets the counts and altitude figures, merging every shard's (country, range) groups. Each
+     * shard keeps its own up to date as it writes, so no shard is asked to scan; the shards are
+     * read one after another, so a write in progress may show on one shard and not yet on another.
+     *
+     * @param groupBy The columns to group by: country, range, both, or neither.
+     * @return One row per group, in country then range order.
+     */
+    public List<AltitudeAggregate> aggregate(final Set<Column> groupBy) {
+        final Map<MountainAggregates.GroupKey, MountainAggregates.Summary> summaries = new HashMap<>();
+        for (Shard shard : shards) {
+            shard.aggregates.summaries().forEach((key, summary) ->
+                    summaries.merge(key, summary, MountainAggregates.Summary::plus));
+        }
+        return MountainAggregates.rollUp(summaries, groupBy);
+    }
+
+    /**
+     * Gets every shard's sketches, which are safe to read from any thread, for merging.
+     *
+     * @return The sketches, in shard order.
+     */
+    public List<MountainSketches> sketches() {
+        final List<MountainSketches> sketches = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            sketches.add(shard.sketches);
+        }
+        return sketches;
+    }
+
+    /**
+     * Gets the highest mountains whose names start with a prefix, merging every shard's name trie.
+     * Each shard keeps its own up to date as it writes, so no shard is asked to scan.
+     *
+     * @param prefix The start of the name, in any case.
+     * @param country Only mountains in this country, or null for any.
+     * @param k How many mountains to return.
+     * @return At most k mountains, highest first.
+     */
+    public List<Mountain> complete(final String prefix, final String country, final int k) {
+        final TopK<Mountain> top = new TopK<>(k, TopK.HIGHEST_FIRST);
+        for (Shard shard : shards) {
+            shard.names.highest(prefix, country, k).forEach(top::offer);
+        }
+        return top.best();
+    }
+
+    /**
+     * Adds a list of mountains, sending each shard the ones whose natural key it indexes.
+     *
+     * @param mountains The list of mountains to add.
+     * @return A ResponseEntity with the result of each mountain, in the order submitted,
+     * and the appropriate status code.
+     */
+    ResponseEntity<List<AddResult>> addMountains(final List<Mountain> mountains) {
+        final Map<Shard, List<Integer>> positionsByShard = new HashMap<>();
+        for (int i = 0; i < mountains.size(); i++) {
+            positionsByShard.computeIfAbsent(keyShard(mountains.get(i)), shard -> new ArrayList<>()).add(i);
+        }
+
+        final long firstAddedAt = addOrder.getAndAdd(mountains.size());
+        final Map<Shard, CompletableFuture<List<AddResult>>> replies = new HashMap<>();
+        for (Map.Entry<Shard, List<Integer>> entry : positionsByShard.entrySet()) {
+            final List<Integer> positions = entry.getValue();
+            replies.put(entry.getKey(), ask(entry.getKey(), shard -> shard.add(mountains, positions, firstAddedAt)));
+        }
+
+        final AddResult[] results = new AddResult[mountains.size()];
+        boolean anyCreated = false;
+        for (Map.Entry<Shard, List<Integer>> entry : positionsByShard.entrySet()) {
+            final List<AddResult> shardResults = await(replies.get(entry.getKey()));
+            for (int i = 0; i < shardResults.size(); i++) {
+                results[entry.getValue().get(i)] = shardResults.get(i);
+                anyCreated |= shardResults.get(i).status() == AddResult.Status.CREATED;
+            }
+        }
+
+        if (anyCreated) {
+            return ResponseEntity.ok(List.of(results));
+        } else {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(List.of(results));
+        }
+    }
+
+    /**
+     * Updates an existing mountain on the shard that owns it.
+     *
+     * @param id the mountain's identifier.
+     * @param newMountain the mountain object with updated variables.
+     * @return A ResponseEntity with the appropriate status code.
+     */
+    ResponseEntity<Void> updateMountain(final int id, final Mountain newMountain) {
+        final boolean updated = await(ask(ownerShard(id), shard -> shard.update(id, newMountain, null)));
+        return updated ? ResponseEntity.ok().build() : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Updates a mountain only if its version is the one the caller read. The owning shard checks
+     * and applies it in one step, so no lock is needed.
+     *
+     * @param id the mountain's identifier.
+     * @param newMountain the mountain object with updated variables.
+     * @param expectedVersion the mountain version the caller read, from its ETag.
+     * @return A ResponseEntity with the appropriate status code - 412 if the mountain has changed.
+     */
+    public ResponseEntity<Void> updateMountainIfMatch(final int id, final Mountain newMountain,
+                                                      final long expectedVersion) {
+        return await(ask(ownerShard(id), shard -> {
+            final Stored stored = shard.mountains.get(id);
+            if (stored == null) {
+                return ResponseEntity.notFound().build();
+            }
+            if (stored.version() != expectedVersion) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+            shard.update(id, newMountain, stored);
+            return ResponseEntity.ok().build();
+        }));
+    }
+
+    /**
+     * Inserts or replaces a mountain by its natural key. The shard indexing the key creates the
+     * mountain if it is new; otherwise the update is sent on to the shard that owns it, starting
+     * again if the mountain was deleted in between.
+     *
+     * @param newMountain the mountain to insert or replace.
+     * @return A ResponseEntity with the mountain's ID and the appropriate status code.
+     */
+    ResponseEntity<Integer> upsertMountain(final Mountain newMountain) {
+        final long addedAt = addOrder.getAndIncrement();
+        while (true) {
+            final UpsertReply reply = await(ask(keyShard(newMountain),
+                    shard -> shard.upsertLocally(newMountain, addedAt)));
+            switch (reply.outcome()) {
+                case CREATED:
+                    return ResponseEntity.status(HttpStatus.CREATED).body(reply.id());
+                case REPLACED:
+                    return ResponseEntity.ok(reply.id());
+                default:
+                    if (await(ask(ownerShard(reply.id()), shard -> shard.update(reply.id(), newMountain, null)))) {
+                        return ResponseEntity.ok(reply.id());
+                    }
+            }
+        }
+    }
+
+    /**
+     * Deletes a mountain on the shard that owns it.
+     *
+     * @param id the mountain's ID.
+     * @return A ResponseEntity with the appropriate status code.
+     */
+    ResponseEntity<Void> deleteMountain(final int id) {
+        final boolean deleted = await(ask(ownerShard(id), shard -> shard.delete(id)));
+        return deleted ? ResponseEntity.ok().build() : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Deletes every mountain matching a filter, each shard deleting its own in parallel.
+     *
+     * @param filter The filter to match.
+     * @return A ResponseEntity with the number of deleted mountains.
+     */
+    ResponseEntity<Integer> deleteMountains(final Predicate<Mountain> filter) {
+        int deleted = 0;
+        for (int count : scatter(shard -> shard.deleteMatching(filter))) {
+            deleted += count;
+        }
+        return ResponseEntity.ok(deleted);
+    }
+
+    /**
+     * Gets the shard that owns a mountain, which is encoded in its ID.
+     *
+     * @param id The mountain's ID.
+     * @return The owning shard.
+     */
+    private Shard ownerShard(final int id) {
+        return shards[Math.floorMod(id, shards.length)];
+    }
+
+    /**
+     * Gets the shard that indexes a natural key.
+     *
+     * @param mountain The mountain whose name, range and country make up the key.
+     * @return The indexing shard.
+     */
+    private Shard keyShard(final Mountain mountain) {
+        return shards[Math.floorMod(mountain.hashCode(), shards.length)];
+    }
+
+    /**
+     * Sends every shard the same work and waits for all of them.
+     *
+     * @param work The work to run on each shard's thread.
+     * @param <R> The reply type.
+     * @return The replies, in shard order.
+     */
+    private <R> List<R> scatter(final Function<Shard, R> work) {
+        final List<CompletableFuture<R>> replies = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            replies.add(ask(shard, work));
+        }
+        final List<R> results = new ArrayList<>(shards.length);
+        for (CompletableFuture<R> reply : replies) {
+            results.add(await(reply));
+        }
+        return results;
+    }
+
+    /**
+     * Runs read-only work on every shard as subtasks of one scope. The scope completes once every
+     * subtask has, or straight away if one fails, the deadline passes or the caller cancels it, and
+     * from then on subtasks that have not started are skipped and running ones are told to stop.
+     *
+     * @param work The work to run on each shard's thread, given a check that turns true once the
+     * scope is over.
+     * @param <R> The reply type.
+     * @return The replies, in shard order.
+     */
+    private <R> CompletableFuture<List<R>> fanOut(final BiFunction<Shard, BooleanSupplier, R> work) {
+        final CompletableFuture<List<R>> scope = new CompletableFuture<>();
+        final AtomicReferenceArray<R> replies = new AtomicReferenceArray<>(shards.length);
+        final AtomicInteger remaining = new AtomicInteger(shards.length);
+        final BooleanSupplier over = scope::isDone;
+        for (Shard shard : shards) {
+            shard.post(() -> {
+                if (over.getAsBoolean()) {
+                    return;
+                }
+                try {
+                    replies.set(shard.index, work.apply(shard, over));
+                    if (remaining.decrementAndGet() == 0) {
+                        final List<R> results = new ArrayList<>(shards.length);
+                        for (int i = 0; i < shards.length; i++) {
+                            results.add(replies.get(i));
+                        }
+                        scope.complete(results);
+                    }
+                } catch (RuntimeException e) {
+                    scope.completeExceptionally(e);
+                }
+            });
+        }
+        return scope.orTimeout(queryDeadline.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Posts work to a shard and returns its eventual reply.
+     *
+     * @param shard The shard to run the work on.
+     * @param work The work.
+     * @param <R> The reply type.
+     * @return A future completed by the shard's thread.
+     */
+    private <R> CompletableFuture<R> ask(final Shard shard, final Function<Shard, R> work) {
+        final CompletableFuture<R> reply = new CompletableFuture<>();
+        shard.post(() -> {
+            try {
+                reply.complete(work.apply(shard));
+            } catch (RuntimeException e) {
+                reply.completeExceptionally(e);
+            }
+        });
+        return reply;
+    }
+
+    /**
+     * Runs work on a shard without waiting for it. If the caller is already that shard's thread the
+     * work runs straight away, so shards never wait on each other.
+     *
+     * @param shard The shard to run the work on.
+     * @param work The work.
+     */
+    private static void tell(final Shard shard, final Consumer<Shard> work) {
+        if (Thread.currentThread() == shard.thread) {
+            work.accept(shard);
+        } else {
+            shard.post(() -> work.accept(shard));
+        }
+    }
+
+    /**
+     * Waits for a shard's reply, rethrowing anything the work threw.
+     *
+     * @param reply The reply.
+     * @param <R> The reply type.
+     * @return The reply's value.
+     */
+    private static <R> R await(final CompletableFuture<R> reply) {
+        try {
+            return reply.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Copies a mountain so stored mountains are never changed after other threads can see them.
+     *
+     * @param mountain The mountain to copy.
+     * @param id The ID to give the copy.
+     * @return The copy.
+     */
+    private static Mountain copyOf(final Mountain mountain, final int id) {
+        final Mountain copy = new Mountain(mountain.getName(), mountain.getAltitude(), mountain.getRange(),
+                mountain.getCountry(), mountain.getIsNorthern());
+        copy.setId(id);
+        return copy;
+    }
+
+    /**
+     * A mountain as a shard stores it.
+     *
+     * @param mountain The mountain, never changed once stored.
+     * @param version The mountain's version number, which goes up by one with every change to it.
+     * @param addedAt Where the mountain comes in the order mountains were added in.
+     */
+    public record Stored(Mountain mountain, long version, long addedAt) {
+    }
+
+    /**
+     * What the shard indexing a key did with an upsert.
+     *
+     * @param id The mountain's ID.
+     * @param outcome Whether it created or replaced the mountain, or left it to the shard that owns it.
+     */
+    private record UpsertReply(int id, Upserted outcome) {
+    }
+
+    private enum Upserted { CREATED, REPLACED, OWNED_ELSEWHERE }
+
+    /**
+     * One shard: an inbox any thread may post to, and data only its own thread touches.
+     */
+    private final class Shard implements Runnable {
+
+        private final int index;
+        private final IdAllocator.Partition ids;
+        private final Queue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+        private volatile boolean parked;
+        private Thread thread;
+
+        private final Map<Integer, Stored> mountains = new LinkedHashMap<>();
+        private final Map<Mountain, Stored> byKey = new HashMap<>();
+        // written only by this shard's thread, but safe for any thread to read
+        private final MountainAggregates aggregates = new MountainAggregates();
+        private final MountainSketches sketches = new MountainSketches();
+        private final NameTrie names = new NameTrie();
+
+        Shard(final int index, final IdAllocator.Partition ids) {
+            this.index = index;
+            this.ids = ids;
+        }
+
+        /**
+         * Queues work for this shard's thread, waking it if it is idle.
+         *
+         * @param task The work.
+         */
+        void post(final Runnable task) {
+            inbox.add(task);
+            // the thread flags itself parked before re-checking the inbox, so either it sees this
+            // task or this sees the flag
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * The shard thread's loop: runs posted work in arrival order, spinning briefly and then
+         * parking when there is none.
+         */
+        @Override
+        public void run() {
+            int idle = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                final Runnable task = inbox.poll();
+                if (task != null) {
+                    task.run();
+                    idle = 0;
+                } else if (++idle < SPINS_BEFORE_PARKING) {
+                    Thread.onSpinWait();
+                } else {
+                    parked = true;
+                    if (inbox.isEmpty()) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                    idle = 0;
+                }
+            }
+        }
+
+        /**
+         * Takes the next ID for a mountain owned by this shard: a fresh ID from the allocator,
+         * scaled so that it also names this shard.
+         *
+         * @return The ID.
+         */
+        int nextId() {
+            final long id = (long) ids.next() * shards.length + index;
+            if (id > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Mountain IDs exhausted");
+            }
+            return (int) id;
+        }
+
+        /**
+         * Scans this shard's mountains for each filter, giving up part way if the query is over.
+         *
+         * @param filters The filters to match.
+         * @param cancelled Turns true once the query no longer needs the answer.
+         * @return One list of matching mountains per filter.
+         */
+        List<List<Stored>> query(final List<Predicate<Mountain>> filters, final BooleanSupplier cancelled) {
+            final List<List<Stored>> results = new ArrayList<>(filters.size());
+            for (Predicate<Mountain> filter : filters) {
+                final List<Stored> matches = new ArrayList<>();
+                int scanned = 0;
+                for (Stored stored : mountains.values()) {
+                    if (++scanned % SCAN_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                        throw new CancellationException("Query is over");
+                    }
+                    if (filter.test(stored.mountain())) {
+                        matches.add(stored);
+                    }
+                }
+                results.add(matches);
+            }
+            return results;
+        }
+
+        /**
+         * Finds this shard's highest mountains matching a filter, giving up part way if the query is over.
+         *
+         * @param filter The filter to match.
+         * @param k How many mountains to keep.
+         * @param cancelled Turns true once the query no longer needs the answer.
+         * @return The heap of the highest matches.
+         */
+        TopK<Stored> top(final Predicate<Mountain> filter, final int k, final BooleanSupplier cancelled) {
+            final TopK<Stored> top = new TopK<>(k, HIGHEST_FIRST);
+            int scanned = 0;
+            for (Stored stored : mountains.values()) {
+                if (++scanned % SCAN_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                    throw new CancellationException("Query is over");
+                }
+                if (filter.test(stored.mountain())) {
+                    top.offer(stored);
+                }
+            }
+            return top;
+        }
+
+        /**
+         * Adds mountains whose natural keys this shard indexes, owning the ones it creates.
+         *
+         * @param all Every mountain in the request.
+         * @param positions The positions in the request of the mountains this shard indexes.
+         * @param firstAddedAt The add order of the request's first mountain.
+         * @return The result of each of those mountains, in order.
+         */
+        List<AddResult> add(final List<Mountain> all, final List<Integer> positions, final long firstAddedAt) {
+            final List<AddResult> results = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                final Mountain mountain = all.get(position);
+                final Stored existing = byKey.get(mountain);
+                if (existing == null) {
+                    results.add(new AddResult(create(mountain, firstAddedAt + position), AddResult.Status.CREATED));
+                } else if (existing.mountain().getAltitude() == mountain.getAltitude()
+                        && existing.mountain().getIsNorthern() == mountain.getIsNorthern()) {
+                    results.add(new AddResult(existing.mountain().getId(), AddResult.Status.ALREADY_EXISTED));
+                } else {
+                    results.add(new AddResult(existing.mountain().getId(), AddResult.Status.CONFLICT));
+                }
+            }
+            return results;
+        }
+
+        /**
+         * Creates the mountain for a key this shard indexes, or replaces it if this shard also owns it.
+         *
+         * @param mountain The mountain to insert or replace.
+         * @param addedAt The add order to give the mountain if it is new.
+         * @return The mountain's ID and what was done, which is nothing if another shard owns it.
+         */
+        UpsertReply upsertLocally(final Mountain mountain, final long addedAt) {
+            final Stored existing = byKey.get(mountain);
+            if (existing == null) {
+                return new UpsertReply(create(mountain, addedAt), Upserted.CREATED);
+            }
+            final int id = existing.mountain().getId();
+            if (ownerShard(id) != this) {
+                return new UpsertReply(id, Upserted.OWNED_ELSEWHERE);
+            }
+            update(id, mountain, null);
+            return new UpsertReply(id, Upserted.REPLACED);
+        }
+
+        private int create(final Mountain mountain, final long addedAt) {
+            final int id = nextId();
+            final Stored stored = new Stored(copyOf(mountain, id), 1, addedAt);
+            mountains.put(id, stored);
+            byKey.put(stored.mountain(), stored);
+            aggregates.changed(null, stored.mountain());
+            sketches.written(null, stored.mountain());
+            names.changed(null, stored.mountain());
+            return id;
+        }
+
+        /**
+         * Replaces a mountain this shard owns and sends the new version to the shard indexing its key.
+         *
+         * @param id The mountain's ID.
+         * @param mountain The new details.
+         * @param current The stored version if the caller has already looked it up, or null.
+         * @return True if updated, false if this shard has no such mountain.
+         */
+        boolean update(final int id, final Mountain mountain, final Stored current) {
+            final Stored previous = current != null ? current : mountains.get(id);
+            if (previous == null) {
+                return false;
+            }
+            final Stored replacement = new Stored(copyOf(mountain, id), previous.version() + 1, previous.addedAt());
+            mountains.put(id, replacement);
+            aggregates.changed(previous.mountain(), replacement.mountain());
+            sketches.written(previous.mountain(), replacement.mountain());
+            names.changed(previous.mountain(), replacement.mountain());
+            if (!previous.mountain().equals(replacement.mountain())) {
+                unindex(previous);
+            }
+            refreshSketches();
+            tell(keyShard(replacement.mountain()), shard -> shard.byKey.put(replacement.mountain(), replacement));
+            return true;
+        }
+
+        boolean delete(final int id) {
+            final Stored removed = mountains.remove(id);
+            if (removed == null) {
+                return false;
+            }
+            aggregates.changed(removed.mountain(), null);
+            sketches.written(removed.mountain(), null);
+            names.changed(removed.mountain(), null);
+            unindex(removed);
+            refreshSketches();
+            return true;
+        }
+
+        int deleteMatching(final Predicate<Mountain> filter) {
+            int deleted = 0;
+            final Iterator<Stored> iterator = mountains.values().iterator();
+            while (iterator.hasNext()) {
+                final Stored stored = iterator.next();
+                if (filter.test(stored.mountain())) {
+                    iterator.remove();
+                    aggregates.changed(stored.mountain(), null);
+                    sketches.written(stored.mountain(), null);
+                    names.changed(stored.mountain(), null);
+                    unindex(stored);
+                    deleted++;
+                }
+            }
+            refreshSketches();
+            return deleted;
+        }
+
+        /**
+         * Rebuilds this shard's sketches from its mountains once replaced and deleted versions
+         * have made them stale.
+         */
+        private void refreshSketches() {
+            if (sketches.isStale()) {
+                sketches.rebuild(() -> mountains.values().stream().map(Stored::mountain).iterator());
+            }
+        }
+
+        /**
+         * Drops a mountain's natural key from the index, unless another mountain has taken the key since.
+         *
+         * @param stored The mountain as it was indexed.
+         */
+        private void unindex(final Stored stored) {
+            final int id = stored.mountain().getId();
+            tell(keyShard(stored.mountain()), shard -> {
+                final Stored indexed = shard.byKey.get(stored.mountain());
+                if (indexed != null && indexed.mountain().getId() == id) {
+                    shard.byKey.remove(stored.mountain());
+                }
+            });
+        }
+    }
+}
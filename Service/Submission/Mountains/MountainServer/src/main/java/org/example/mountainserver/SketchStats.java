@@ -0,0 +1,26 @@
+package org.example.mountainserver;
+
+import java.util.Map;
+
+/**
+ * Approximate figures for the mountains written overall, in one country or in one range, as
+ * returned by the stats endpoint, with the error bounds of the sketches behind them. The figures
+ * cover the latest versions as of the sketches' last rebuild and every version written since,
+ * including ones since replaced or deleted.
+ *
+ * @param country The country described, or null.
+ * @param range The range described, or null.
+ * @param altitudesSeen How many versions the sketches hold.
+ * @param distinctNames The estimated number of distinct names.
+ * @param distinctRanges The estimated number of distinct ranges.
+ * @param distinctCountStandardError The relative standard error of the distinct counts.
+ * @param altitudeQuantiles The estimated altitude at each quantile asked for.
+ * @param quantileRankError The typical rank error of the altitude quantiles near the median,
+ * smaller towards the tails.
+ * @author 2014459
+ * @version 1.0
+ */
+public record SketchStats(String country, String range, long altitudesSeen, long distinctNames, long distinctRanges,
+                          double distinctCountStandardError, Map<String, Double> altitudeQuantiles,
+                          double quantileRankError) {
+}
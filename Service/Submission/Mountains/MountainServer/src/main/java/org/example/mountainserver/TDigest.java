@@ -0,0 +1,209 @@
+package org.example.mountainserver;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Merging t-digest: estimates quantiles of the values added to it from a bounded number of
+ * centroids, weighted means of neighbouring values. New values are buffered and merged in
+ * batches; the merge lets a centroid grow only as far as the k1 scale function allows at its
+ * place in the distribution, so centroids stay small near the tails and quantiles there stay
+ * accurate. With a compression of 100 it keeps at most about 100 centroids, and the rank error
+ * of a quantile is typically within 1% near the median and much less at the tails.
+ * Values cannot be taken out again, so the digest describes everything ever added.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class TDigest {
+
+    private final double compression;
+    private final double[] bufferMeans;
+    private final double[] bufferWeights;
+    private final Lock lock = new ReentrantLock();
+    private int buffered;
+    private double[] means = new double[0];
+    private double[] weights = new double[0];
+    private double total;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Creates an empty digest.
+     *
+     * @param compression How many centroids to aim for; more is more accurate and uses more memory.
+     */
+    public TDigest(final double compression) {
+        this.compression = compression;
+        this.bufferMeans = new double[(int) Math.ceil(compression) * 5];
+        this.bufferWeights = new double[bufferMeans.length];
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value The value.
+     */
+    public void add(final double value) {
+        lock.lock();
+        try {
+            add(value, 1, value, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds everything another digest has seen, centroid by centroid.
+     *
+     * @param other The other digest.
+     */
+    public void addAll(final TDigest other) {
+        final double[] theirMeans;
+        final double[] theirWeights;
+        final double theirMin;
+        final double theirMax;
+        other.lock.lock();
+        try {
+            other.merge();
+            theirMeans = other.means.clone();
+            theirWeights = other.weights.clone();
+            theirMin = other.min;
+            theirMax = other.max;
+        } finally {
+            other.lock.unlock();
+        }
+        lock.lock();
+        try {
+            for (int i = 0; i < theirMeans.length; i++) {
+                add(theirMeans[i], theirWeights[i], theirMin, theirMax);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets how many values have been added.
+     *
+     * @return The count.
+     */
+    public long count() {
+        lock.lock();
+        try {
+            return Math.round(total);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimates a quantile of the values added.
+     *
+     * @param q The quantile, from 0 to 1.
+     * @return The estimate, or NaN if nothing has been added.
+     */
+    public double quantile(final double q) {
+        lock.lock();
+        try {
+            merge();
+            final int n = means.length;
+            if (n == 0) {
+                return Double.NaN;
+            }
+            if (n == 1) {
+                return means[0];
+            }
+            final double index = q * total;
+            // treat each centroid's weight as spread evenly around its mean, reaching min and max at the ends
+            double soFar = weights[0] / 2;
+            if (index <= soFar) {
+                return min + (means[0] - min) * (index / soFar);
+            }
+            for (int i = 0; i < n - 1; i++) {
+                final double between = (weights[i] + weights[i + 1]) / 2;
+                if (soFar + between >= index) {
+                    return means[i] + (means[i + 1] - means[i]) * ((index - soFar) / between);
+                }
+                soFar += between;
+            }
+            final double last = weights[n - 1] / 2;
+            return means[n - 1] + (max - means[n - 1]) * Math.min(1, (index - soFar) / last);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(final double mean, final double weight, final double low, final double high) {
+        if (buffered == bufferMeans.length) {
+            merge();
+        }
+        bufferMeans[buffered] = mean;
+        bufferWeights[buffered] = weight;
+        buffered++;
+        total += weight;
+        min = Math.min(min, low);
+        max = Math.max(max, high);
+    }
+
+    /**
+     * Merges the buffered values into the centroids. The caller must hold the lock.
+     */
+    private void merge() {
+        if (buffered == 0) {
+            return;
+        }
+        final int n = means.length + buffered;
+        final double[][] points = new double[n][];
+        for (int i = 0; i < means.length; i++) {
+            points[i] = new double[] {means[i], weights[i]};
+        }
+        for (int i = 0; i < buffered; i++) {
+            points[means.length + i] = new double[] {bufferMeans[i], bufferWeights[i]};
+        }
+        buffered = 0;
+        Arrays.sort(points, Comparator.comparingDouble(point -> point[0]));
+
+        final double[] mergedMeans = new double[n];
+        final double[] mergedWeights = new double[n];
+        int centroids = 0;
+        double soFar = 0;
+        double limit = total * quantileOf(scaleOf(0) + 1);
+        double mean = points[0][0];
+        double weight = points[0][1];
+        for (int i = 1; i < n; i++) {
+            if (soFar + weight + points[i][1] <= limit) {
+                weight += points[i][1];
+                mean += (points[i][0] - mean) * points[i][1] / weight;
+            } else {
+                mergedMeans[centroids] = mean;
+                mergedWeights[centroids] = weight;
+                centroids++;
+                soFar += weight;
+                limit = total * quantileOf(scaleOf(soFar / total) + 1);
+                mean = points[i][0];
+                weight = points[i][1];
+            }
+        }
+        mergedMeans[centroids] = mean;
+        mergedWeights[centroids] = weight;
+        centroids++;
+        means = Arrays.copyOf(mergedMeans, centroids);
+        weights = Arrays.copyOf(mergedWeights, centroids);
+    }
+
+    /**
+     * The k1 scale function, which maps a quantile to a scale where every centroid may be one unit wide.
+     */
+    private double scaleOf(final double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+    }
+
+    private double quantileOf(final double k) {
+        if (k >= compression / 4) {
+            return 1;
+        }
+        return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.mountainserver;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Statistics on the latest version of every mountain, kept up to date on each write, for the
+ * query planner's estimates: the number of mountains, how many have each value of each equality
+ * column and how many distinct values a column has, and a histogram of altitudes.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class TableStatistics {
+
+    /** The width of each altitude histogram bucket, in metres. */
+    static final int BUCKET_WIDTH = 250;
+    private static final int BUCKETS = 40;
+
+    private final AtomicLong rows = new AtomicLong();
+    private final Map<Column, Map<String, Long>> counts = new EnumMap<>(Column.class);
+    private final Map<Column, AtomicInteger> distinct = new EnumMap<>(Column.class);
+    // the last bucket also holds every altitude beyond the others
+    private final AtomicLongArray altitudes = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Creates empty statistics.
+     */
+    public TableStatistics() {
+        for (Column column : Column.values()) {
+            counts.put(column, new ConcurrentHashMap<>());
+            distinct.put(column, new AtomicInteger());
+        }
+    }
+
+    /**
+     * Counts a mountain in.
+     *
+     * @param mountain The mountain's latest version.
+     */
+    public void add(final Mountain mountain) {
+        rows.incrementAndGet();
+        altitudes.incrementAndGet(bucketOf(mountain.getAltitude()));
+        for (Column column : Column.values()) {
+            final AtomicInteger columnDistinct = distinct.get(column);
+            counts.get(column).compute(column.valueOf(mountain), (value, count) -> {
+                if (count == null) {
+                    columnDistinct.incrementAndGet();
+                    return 1L;
+                }
+                return count + 1;
+            });
+        }
+    }
+
+    /**
+     * Counts a mountain out.
+     *
+     * @param mountain The version of the mountain that is no longer its latest.
+     */
+    public void remove(final Mountain mountain) {
+        rows.decrementAndGet();
+        altitudes.decrementAndGet(bucketOf(mountain.getAltitude()));
+        for (Column column : Column.values()) {
+            final AtomicInteger columnDistinct = distinct.get(column);
+            counts.get(column).computeIfPresent(column.valueOf(mountain), (value, count) -> {
+                if (count == 1) {
+                    columnDistinct.decrementAndGet();
+                    return null;
+                }
+                return count - 1;
+            });
+        }
+    }
+
+    /**
+     * Gets the number of mountains.
+     *
+     * @return The number of mountains.
+     */
+    public long rows() {
+        return Math.max(0, rows.get());
+    }
+
+    /**
+     * Gets how many distinct values a column has.
+     *
+     * @param column The column.
+     * @return The column's cardinality.
+     */
+    public int cardinality(final Column column) {
+        return distinct.get(column).get();
+    }
+
+    /**
+     * Estimates the fraction of mountains with a value in a column.
+     *
+     * @param column The column.
+     * @param value The value.
+     * @return The fraction, between 0 and 1.
+     */
+    public double selectivity(final Column column, final String value) {
+        final long total = rows();
+        return total == 0 ? 0 : Math.min(1, counts.get(column).getOrDefault(value, 0L) / (double) total);
+    }
+
+    /**
+     * Estimates the fraction of mountains higher than an altitude, assuming altitudes are spread
+     * evenly within each histogram bucket.
+     *
+     * @param altitude The altitude.
+     * @return The fraction, between 0 and 1.
+     */
+    public double selectivityAbove(final int altitude) {
+        final long total = rows();
+        if (total == 0) {
+            return 0;
+        }
+        final int bucket = bucketOf(altitude);
+        double above = 0;
+        for (int i = bucket + 1; i < BUCKETS; i++) {
+            above += altitudes.get(i);
+        }
+        if (bucket < BUCKETS - 1) {
+            final int bucketTop = (bucket + 1) * BUCKET_WIDTH;
+            above += altitudes.get(bucket) * (bucketTop - 1 - Math.max(altitude, 0)) / (double) BUCKET_WIDTH;
+        } else {
+            above += altitudes.get(bucket) / 2.0;
+        }
+        return Math.min(1, Math.max(0, above / total));
+    }
+
+    private static int bucketOf(final int altitude) {
+        return Math.min(BUCKETS - 1, Math.max(0, altitude / BUCKET_WIDTH));
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.mountainserver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Bounded heap keeping the best k of whatever is offered to it, so the top of a large result can
+ * be found in one pass without holding on to the rest. The worst item kept sits at the head of
+ * the heap, ready to be pushed out by a better one.
+ * @param <T> The item type.
+ * @author 2014459
+ * @version 1.0
+ */
+public final class TopK<T> {
+
+    /** Orders mountains highest first, then by ID so equally high mountains always come out the same way. */
+    public static final Comparator<Mountain> HIGHEST_FIRST =
+            Comparator.comparingInt(Mountain::getAltitude).reversed().thenComparingInt(Mountain::getId);
+
+    private final int k;
+    private final Comparator<? super T> order;
+    private final PriorityQueue<T> kept;
+
+    /**
+     * Creates an empty heap.
+     *
+     * @param k How many items to keep.
+     * @param order The order of the items, best first.
+     */
+    public TopK(final int k, final Comparator<? super T> order) {
+        this.k = k;
+        this.order = order;
+        this.kept = new PriorityQueue<>(Math.max(1, k), order.reversed());
+    }
+
+    /**
+     * Offers an item, which is kept if it is among the best k so far.
+     *
+     * @param item The item.
+     */
+    public void offer(final T item) {
+        if (kept.size() < k) {
+            kept.add(item);
+        } else if (k > 0 && order.compare(item, kept.peek()) < 0) {
+            kept.poll();
+            kept.add(item);
+        }
+    }
+
+    /**
+     * Offers every item kept by another heap.
+     *
+     * @param other The other heap.
+     */
+    public void offerAll(final TopK<? extends T> other) {
+        for (T item : other.kept) {
+            offer(item);
+        }
+    }
+
+    /**
+     * Gets the items kept.
+     *
+     * @return At most k items, best first.
+     */
+    public List<T> best() {
+        final List<T> best = new ArrayList<>(kept);
+        best.sort(order);
+        return best;
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.mountainserver;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Scan kernel that compares as many altitudes at once as the CPU's widest vector register holds,
+ * ANDs the result with the hemisphere lanes and writes the lane mask straight into the selection
+ * bitmap. Rows past the last full vector are compared one at a time.
+ * Only load this class when the jdk.incubator.vector module is present.
+ * @author 2014459
+ * @version 1.0
+ */
+final class VectorScanKernel implements ScanKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public long[] select(final MountainColumns columns, final ColumnFilter filter) {
+        final int[] altitudes = columns.altitudes();
+        final boolean[] northern = columns.northern();
+        final int size = columns.size();
+        final long[] selection = new long[(size + Long.SIZE - 1) / Long.SIZE];
+        final Integer altitudeAbove = filter.altitudeAbove();
+        final Boolean wantNorthern = filter.northern();
+
+        int i = 0;
+        // the lane count divides 64, so a vector's bits never straddle two bitmap words
+        for (final int bound = SPECIES.loopBound(size); i < bound; i += SPECIES.length()) {
+            VectorMask<Integer> matches = altitudeAbove == null
+                    ? SPECIES.maskAll(true)
+                    : IntVector.fromArray(SPECIES, altitudes, i).compare(VectorOperators.GT, altitudeAbove);
+            if (wantNorthern != null) {
+                final VectorMask<Integer> north = VectorMask.fromArray(SPECIES, northern, i);
+                matches = matches.and(wantNorthern ? north : north.not());
+            }
+            selection[i >>> 6] |= matches.toLong() << i;
+        }
+        for (; i < size; i++) {
+            if (filter.test(altitudes[i], northern[i])) {
+                selection[i >>> 6] |= 1L << i;
+            }
+        }
+        return selection;
+    }
+
+    @Override
+    public String name() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+}
@@ -0,0 +1,256 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adapts the multi-version store's secondary indexes to the queries it is actually sent. Each
+ * filter query is timed under the mountain.queries metric, tagged with the criteria it used, and
+ * the mountains it had to check are added to the load of its shape - the set of columns it compares
+ * for equality. A background thread regularly builds an index for any shape whose load has reached
+ * the threshold, no index serves yet and that is selective enough for an index to beat a scan, and
+ * drops built indexes that no query has used for a while. Loads are halved on every check, so only
+ * recent queries count. The built-in (country, range) index is never dropped.
+ * @author 2014459
+ * @version 1.0
+ */
+@Component
+public class WorkloadTracker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkloadTracker.class);
+    /** Bits of a timer key after one per column: whether the query gave an ID, and an altitude. */
+    private static final int ID_BIT = 1 << Column.values().length;
+    private static final int ALTITUDE_BIT = ID_BIT << 1;
+
+    private final MountainStore store;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final long buildThreshold;
+    private final Duration idleAfter;
+    private final Duration checkInterval;
+    private final Map<Set<Column>, LongAdder> loads = new ConcurrentHashMap<>();
+    // registered once per set of criteria, so recording a query needs no registry lookup
+    private final Map<Integer, Timer> timers = new ConcurrentHashMap<>();
+    private final Counter built;
+    private final Counter dropped;
+    private ScheduledExecutorService indexer;
+
+    /**
+     * Creates the tracker.
+     *
+     * @param store The store whose indexes are adapted.
+     * @param registry Where the query and index metrics are registered.
+     * @param enabled Whether indexes are built and dropped automatically; queries are timed either way.
+     * @param buildThreshold How many mountains queries of one shape must check before it gets an index.
+     * @param idleAfter How long a built index may go unused before it is dropped.
+     * @param checkInterval How often the workload is checked.
+     */
+    public WorkloadTracker(final MountainStore store, final MeterRegistry registry,
+                           @Value("${mountain.indexes.auto.enabled:true}") final boolean enabled,
+                           @Value("${mountain.indexes.auto.build-threshold:1000000}") final long buildThreshold,
+                           @Value("${mountain.indexes.auto.idle-after:PT1H}") final Duration idleAfter,
+                           @Value("${mountain.indexes.auto.check-interval:PT1M}") final Duration checkInterval) {
+        this.store = store;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.buildThreshold = buildThreshold;
+        this.idleAfter = idleAfter;
+        this.checkInterval = checkInterval;
+        this.built = Counter.builder("mountain.indexes.auto.built")
+                .description("Secondary indexes built for the query workload")
+                .register(registry);
+        this.dropped = Counter.builder("mountain.indexes.auto.dropped")
+                .description("Secondary indexes dropped after going unused")
+                .register(registry);
+    }
+
+    /**
+     * Starts the background indexer if automatic indexing is enabled.
+     */
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        indexer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("mountain-indexer").daemon().factory());
+        indexer.scheduleWithFixedDelay(this::adapt, checkInterval.toMillis(), checkInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background indexer.
+     */
+    @PreDestroy
+    void stop() {
+        if (indexer != null) {
+            indexer.shutdownNow();
+        }
+    }
+
+    /**
+     * Records a filter query that has run.
+     *
+     * @param query The query's criteria.
+     * @param execution How it ran.
+     * @param nanos How long planning and running it took.
+     */
+    public void record(final MountainQuery query, final QueryPlan.Execution execution, final long nanos) {
+        final Set<Column> shape = shapeOf(query);
+        timers.computeIfAbsent(timerKey(shape, query), key -> Timer.builder("mountain.queries")
+                        .description("Filter queries, by the criteria they used")
+                        .tag("shape", shapeName(shape, query))
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (!shape.isEmpty()) {
+            loads.computeIfAbsent(shape, columns -> new LongAdder()).add(execution.candidates());
+        }
+    }
+
+    /**
+     * Drops idle indexes, then builds indexes for the shapes that have earned one.
+     */
+    void adapt() {
+        try {
+            final MountainIndexes indexes = store.indexes();
+            final long now = System.nanoTime();
+            for (SecondaryIndex index : indexes.secondaryIndexes()) {
+                if (index.isAutomatic() && index.isReady() && now - index.lastUsedNanos() > idleAfter.toNanos()) {
+                    indexes.drop(index);
+                    dropped.increment();
+                    LOG.info("Dropped the unused {} index", index.name());
+                }
+            }
+
+            for (Map.Entry<Set<Column>, LongAdder> entry : loads.entrySet()) {
+                final Set<Column> shape = entry.getKey();
+                final long load = entry.getValue().sum();
+                if (load >= buildThreshold && !served(shape, indexes) && selective(shape, indexes.statistics())) {
+                    final List<Column> columns = new ArrayList<>(shape);
+                    columns.sort(Comparator.comparingInt((Column column) -> indexes.statistics().cardinality(column))
+                            .reversed());
+                    final SecondaryIndex index = store.buildIndex(columns);
+                    built.increment();
+                    LOG.info("Built the {} index after queries on it checked {} mountains", index.name(), load);
+                    entry.getValue().reset();
+                } else {
+                    entry.getValue().add(-load / 2);
+                }
+            }
+        } catch (RuntimeException e) {
+            // keep the schedule running; the next check tries again
+            LOG.warn("Adapting the indexes failed", e);
+        }
+    }
+
+    /**
+     * Checks whether an existing index already answers a shape on its own.
+     *
+     * @param shape The columns a query compares.
+     * @param indexes The store's indexes.
+     * @return True if some index starts with exactly those columns.
+     */
+    private static boolean served(final Set<Column> shape, final MountainIndexes indexes) {
+        for (SecondaryIndex index : indexes.secondaryIndexes()) {
+            if (index.serves(shape)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a seek on a shape's columns would be cheaper than a scan, assuming their
+     * values are spread evenly.
+     *
+     * @param shape The columns a query compares.
+     * @param statistics The store's statistics.
+     * @return True if the seek would probe fewer mountains than its cost in scanned rows allows.
+     */
+    private static boolean selective(final Set<Column> shape, final TableStatistics statistics) {
+        double selectivity = 1;
+        for (Column column : shape) {
+            selectivity /= Math.max(1, statistics.cardinality(column));
+        }
+        return selectivity * QueryPlanner.PROBE_COST < 1;
+    }
+
+    /**
+     * Gets the columns a query compares for equality.
+     *
+     * @param query The query.
+     * @return The columns.
+     */
+    private static Set<Column> shapeOf(final MountainQuery query) {
+        final Set<Column> shape = EnumSet.noneOf(Column.class);
+        for (Column column : Column.values()) {
+            if (column.criterionOf(query) != null) {
+                shape.add(column);
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * Packs every criterion a query uses into a key for its timer.
+     *
+     * @param shape The columns the query compares for equality.
+     * @param query The query.
+     * @return One bit per column in the shape, plus one each for an ID and an altitude.
+     */
+    private static int timerKey(final Set<Column> shape, final MountainQuery query) {
+        int key = 0;
+        for (Column column : shape) {
+            key |= 1 << column.ordinal();
+        }
+        if (query.id() != null) {
+            key |= ID_BIT;
+        }
+        if (query.altitude() != null) {
+            key |= ALTITUDE_BIT;
+        }
+        return key;
+    }
+
+    /**
+     * Names every criterion a query uses, for tagging its timing.
+     *
+     * @param shape The columns the query compares for equality.
+     * @param query The query.
+     * @return The criteria joined with '+', such as "country+range+altitude", or "none".
+     */
+    private static String shapeName(final Set<Column> shape, final MountainQuery query) {
+        final StringJoiner name = new StringJoiner("+");
+        for (Column column : shape) {
+            name.add(column.name().toLowerCase());
+        }
+        if (query.id() != null) {
+            name.add("id");
+        }
+        if (query.altitude() != null) {
+            name.add("altitude");
+        }
+        return name.length() == 0 ? "none" : name.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.mountainserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FacetedMountainsTests {
+
+    @Test
+    void countsCoverEveryMatchWhileOnlyAPageIsReturned() {
+        List<Mountain> matches = List.of(
+                new Mountain("Everest", 8849, "Himalayas", "Nepal", true),
+                new Mountain("Makalu", 8485, "Himalayas", "Nepal", true),
+                new Mountain("Annapurna", 8091, "Annapurna", "Nepal", true),
+                new Mountain("Aconcagua", 6961, "Andes", "Argentina", false));
+        Map<String, Column> facets = new LinkedHashMap<>();
+        facets.put("country", Column.COUNTRY);
+        facets.put("northern-hemisphere", Column.HEMISPHERE);
+
+        FacetedMountains faceted = FacetedMountains.of(matches, facets, null, 2);
+        FacetedMountains later = FacetedMountains.of(matches, facets, 1, 2);
+        FacetedMountains beyond = FacetedMountains.of(matches, facets, 5, null);
+
+        assertEquals(matches.subList(0, 2), faceted.mountains());
+        assertEquals(4, faceted.total());
+        assertEquals(Map.of("country", Map.of("Argentina", 1L, "Nepal", 3L),
+                "northern-hemisphere", Map.of("false", 1L, "true", 3L)), faceted.facets());
+        assertEquals(matches.subList(1, 3), later.mountains());
+        assertEquals(faceted.facets(), later.facets());
+        assertEquals(List.of(), beyond.mountains());
+        assertEquals(4, beyond.total());
+    }
+}
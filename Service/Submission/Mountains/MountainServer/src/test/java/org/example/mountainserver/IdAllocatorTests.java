@@ -0,0 +1,60 @@
+package org.example.mountainserver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdAllocatorTests {
+
+    private static final int PARTITIONS = 8;
+    private static final int IDS_PER_PARTITION = 1000;
+
+    @Test
+    void partitionsNeverShareAnId() throws Exception {
+        IdAllocator allocator = new IdAllocator(16, "");
+        List<Future<List<Integer>>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(PARTITIONS)) {
+            for (int i = 0; i < PARTITIONS; i++) {
+                futures.add(executor.submit(() -> {
+                    IdAllocator.Partition partition = allocator.newPartition();
+                    List<Integer> ids = new ArrayList<>();
+                    for (int j = 0; j < IDS_PER_PARTITION; j++) {
+                        ids.add(partition.next());
+                    }
+                    return ids;
+                }));
+            }
+        }
+
+        Set<Integer> seen = new HashSet<>();
+        for (Future<List<Integer>> future : futures) {
+            for (int id : future.get()) {
+                assertTrue(id > 0);
+                assertTrue(seen.add(id), "ID " + id + " handed out twice");
+            }
+        }
+        assertEquals(PARTITIONS * IDS_PER_PARTITION, seen.size());
+    }
+
+    @Test
+    void idsAreNotReusedAfterRestart(@TempDir final Path dir) {
+        String file = dir.resolve("mountain-ids").toString();
+        IdAllocator.Partition before = new IdAllocator(10, file).newPartition();
+        assertEquals(1, before.next());
+        assertEquals(2, before.next());
+
+        IdAllocator.Partition after = new IdAllocator(10, file).newPartition();
+        assertEquals(11, after.next());
+    }
+}
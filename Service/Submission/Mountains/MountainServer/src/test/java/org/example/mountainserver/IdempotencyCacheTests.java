@@ -0,0 +1,83 @@
+package org.example.mountainserver;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IdempotencyCacheTests {
+
+    @Test
+    void repeatedKeyReturnsStoredResponse() {
+        IdempotencyCache cache = new IdempotencyCache(10, Duration.ofMinutes(1));
+        AtomicInteger calls = new AtomicInteger();
+
+        ResponseEntity<Integer> first = cache.execute("key", "POST /",
+                () -> ResponseEntity.ok(calls.incrementAndGet()));
+        ResponseEntity<Integer> retry = cache.execute("key", "POST /",
+                () -> ResponseEntity.ok(calls.incrementAndGet()));
+
+        assertEquals(1, calls.get());
+        assertEquals(first.getBody(), retry.getBody());
+    }
+
+    @Test
+    void keyReusedForDifferentOperationIsRejected() {
+        IdempotencyCache cache = new IdempotencyCache(10, Duration.ofMinutes(1));
+        cache.execute("key", "POST /", () -> ResponseEntity.ok().build());
+
+        ResponseEntity<Void> reused = cache.execute("key", "DELETE delete-mountain/1",
+                () -> ResponseEntity.ok().build());
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, reused.getStatusCode());
+    }
+
+    @Test
+    void keyReusedWithADifferentBodyIsRejected() {
+        IdempotencyCache cache = new IdempotencyCache(10, Duration.ofMinutes(1));
+        cache.execute("key", IdempotencyCache.fingerprint("POST /", "[1]".getBytes()),
+                () -> ResponseEntity.ok().build());
+
+        ResponseEntity<Void> retry = cache.execute("key", IdempotencyCache.fingerprint("POST /", "[1]".getBytes()),
+                () -> ResponseEntity.ok().build());
+        ResponseEntity<Void> reused = cache.execute("key", IdempotencyCache.fingerprint("POST /", "[2]".getBytes()),
+                () -> ResponseEntity.ok().build());
+
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, reused.getStatusCode());
+    }
+
+    @Test
+    void serverErrorsAreNotRemembered() {
+        IdempotencyCache cache = new IdempotencyCache(10, Duration.ofMinutes(1));
+        AtomicInteger calls = new AtomicInteger();
+
+        ResponseEntity<Integer> full = cache.execute("key", "POST /",
+                () -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(calls.incrementAndGet()));
+        ResponseEntity<Integer> retry = cache.execute("key", "POST /",
+                () -> ResponseEntity.ok(calls.incrementAndGet()));
+        ResponseEntity<Integer> again = cache.execute("key", "POST /",
+                () -> ResponseEntity.ok(calls.incrementAndGet()));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, full.getStatusCode());
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(2, again.getBody());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void oldestKeyIsDroppedWhenFull() {
+        IdempotencyCache cache = new IdempotencyCache(1, Duration.ofMinutes(1));
+        AtomicInteger calls = new AtomicInteger();
+
+        cache.execute("first", "POST /", () -> ResponseEntity.ok(calls.incrementAndGet()));
+        cache.execute("second", "POST /", () -> ResponseEntity.ok(calls.incrementAndGet()));
+        cache.execute("first", "POST /", () -> ResponseEntity.ok(calls.incrementAndGet()));
+
+        assertEquals(3, calls.get());
+    }
+}
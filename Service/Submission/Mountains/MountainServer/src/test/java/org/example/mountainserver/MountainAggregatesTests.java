@@ -0,0 +1,59 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MountainAggregatesTests {
+
+    private static final List<Mountain> MOUNTAINS = List.of(
+            new Mountain("Everest", 8849, "Himalayas", "Nepal", true),
+            new Mountain("Makalu", 8485, "Himalayas", "Nepal", true),
+            new Mountain("Annapurna", 8091, "Annapurna", "Nepal", true),
+            new Mountain("Aconcagua", 6961, "Andes", "Argentina", false),
+            new Mountain("Huascaran", 6768, "Andes", "Peru", false));
+
+    @Test
+    void figuresFollowAddsUpdatesAndDeletes() {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        store.apply(new Mutation.Add(MOUNTAINS));
+        int everest = store.query(mountain -> mountain.getName().equals("Everest")).get(0).getId();
+        int huascaran = store.query(mountain -> mountain.getName().equals("Huascaran")).get(0).getId();
+        store.apply(new Mutation.Update(everest, new Mountain("Everest", 5000, "Himalayas", "Nepal", false)));
+        store.apply(new Mutation.Delete(huascaran));
+
+        MountainAggregates aggregates = store.indexes().aggregates();
+        assertEquals(List.of(new AltitudeAggregate(null, null, 4, 2, 2, 5000, 8485, (5000 + 8485 + 8091 + 6961) / 4.0)),
+                MountainAggregates.rollUp(aggregates.summaries(), Set.of()));
+        assertEquals(List.of(
+                        new AltitudeAggregate("Argentina", null, 1, 0, 1, 6961, 6961, 6961),
+                        new AltitudeAggregate("Nepal", null, 3, 2, 1, 5000, 8485, (5000 + 8485 + 8091) / 3.0)),
+                MountainAggregates.rollUp(aggregates.summaries(), EnumSet.of(Column.COUNTRY)));
+        assertEquals(new AltitudeAggregate("Nepal", "Himalayas", 2, 1, 1, 5000, 8485, 6742.5),
+                MountainAggregates.rollUp(aggregates.summaries(), EnumSet.of(Column.COUNTRY, Column.RANGE)).get(2));
+    }
+
+    @Test
+    void shardedFiguresAreMergedAcrossShards() {
+        ShardedMountainStore store = new ShardedMountainStore("sharded", 4, Duration.ofSeconds(5),
+                new IdAllocator(16, ""));
+        store.start();
+        try {
+            store.addMountains(MOUNTAINS);
+            assertEquals(List.of(
+                            new AltitudeAggregate(null, "Andes", 2, 0, 2, 6768, 6961, (6961 + 6768) / 2.0),
+                            new AltitudeAggregate(null, "Annapurna", 1, 1, 0, 8091, 8091, 8091),
+                            new AltitudeAggregate(null, "Himalayas", 2, 2, 0, 8485, 8849, (8849 + 8485) / 2.0)),
+                    store.aggregate(EnumSet.of(Column.RANGE)));
+        } finally {
+            store.stop();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.example.mountainserver;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "mountain.ids.high-water-file=")
+@AutoConfigureMockMvc
+class MountainResourceTests {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    void multiVersionReadsAnswerWithoutAnAsyncDispatch() throws Exception {
+        mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"name\":\"Aconcagua\",\"altitude\":6961,\"range\":\"Andes\","
+                                + "\"country\":\"Argentina\",\"isNorthern\":false}]"))
+                .andExpect(status().isOk());
+
+        mvc.perform(get("/country/Argentina/range/Andes"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("Aconcagua"));
+        mvc.perform(get("/top").param("k", "1"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk());
+        mvc.perform(post("/query").contentType(MediaType.APPLICATION_JSON).content("[{\"country\":\"Argentina\"}]"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void idsNeverHandedOutMatchNothing() throws Exception {
+        StringBuilder peaks = new StringBuilder("[");
+        for (int i = 0; i < 20; i++) {
+            peaks.append(i == 0 ? "" : ",").append("{\"name\":\"Cerro ").append(i)
+                    .append("\",\"altitude\":5000,\"range\":\"Andes\",\"country\":\"Peru\",\"isNorthern\":false}");
+        }
+        mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON).content(peaks.append("]").toString()));
+        String seq = mvc.perform(get("/")).andReturn().getResponse().getHeader("Snapshot-Sequence");
+
+        mvc.perform(get("/id/-1").param("explain", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accessPath").value("ID_LOOKUP"))
+                .andExpect(jsonPath("$.actualRows").value(0));
+        mvc.perform(get("/id/-1").param("as-of", seq))
+                .andExpect(status().isNoContent());
+        mvc.perform(get("/id/" + Integer.MAX_VALUE).param("explain", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accessPath").value("ID_LOOKUP"))
+                .andExpect(jsonPath("$.actualRows").value(0));
+        mvc.perform(get("/id/" + Integer.MAX_VALUE).param("as-of", seq))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    void idempotencyKeyReusedWithADifferentBodyIsRejected() throws Exception {
+        String llullaillaco = "[{\"name\":\"Llullaillaco\",\"altitude\":6739,\"range\":\"Andes\","
+                + "\"country\":\"Argentina\",\"isNorthern\":false}]";
+        mvc.perform(post("/").header("Idempotency-Key", "add-once").contentType(MediaType.APPLICATION_JSON)
+                        .content(llullaillaco))
+                .andExpect(status().isOk());
+
+        mvc.perform(post("/").header("Idempotency-Key", "add-once").contentType(MediaType.APPLICATION_JSON)
+                        .content(llullaillaco))
+                .andExpect(status().isOk());
+        mvc.perform(post("/").header("Idempotency-Key", "add-once").contentType(MediaType.APPLICATION_JSON)
+                        .content(llullaillaco.replace("6739", "6740")))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void facetsAreCountedUnlessAnExplanationIsAskedFor() throws Exception {
+        mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"name\":\"Snowdon\",\"altitude\":1085,\"range\":\"Eryri\","
+                                + "\"country\":\"Wales\",\"isNorthern\":true},"
+                                + "{\"name\":\"Glyder Fawr\",\"altitude\":1001,\"range\":\"Eryri\","
+                                + "\"country\":\"Wales\",\"isNorthern\":true}]"))
+                .andExpect(status().isOk());
+
+        mvc.perform(get("/country/Wales/range/Eryri").param("facets", "range").param("explain", "false")
+                        .param("offset", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(2))
+                .andExpect(jsonPath("$.mountains.length()").value(1))
+                .andExpect(jsonPath("$.mountains[0].name").value("Glyder Fawr"))
+                .andExpect(jsonPath("$.facets.range.Eryri").value(2));
+        mvc.perform(get("/country/Wales/range/Eryri").param("facets", "range").param("explain", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accessPath").exists());
+        mvc.perform(get("/country/Atlantis").param("facets", "range"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(0));
+        mvc.perform(get("/country/Wales").param("facets", "range").param("offset", "-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void deletingMountainsNeedsAtLeastOneCriterion() throws Exception {
+        mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"name\":\"Pen y Fan\",\"altitude\":886,\"range\":\"BannauBrycheiniog\","
+                                + "\"country\":\"Cymru\",\"isNorthern\":true}]"))
+                .andExpect(status().isOk());
+
+        mvc.perform(delete("/delete-mountains"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/country/Cymru"))
+                .andExpect(jsonPath("$.length()").value(1));
+        mvc.perform(delete("/delete-mountains/country/Cymru"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("1"));
+    }
+
+    @Test
+    void upsertCreatesThenReplacesByNaturalKey() throws Exception {
+        String annapurna = "{\"name\":\"Annapurna I\",\"altitude\":8091,\"range\":\"Annapurna\","
+                + "\"country\":\"Nepal\",\"isNorthern\":true}";
+        String id = mvc.perform(put("/upsert-mountain").contentType(MediaType.APPLICATION_JSON).content(annapurna))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+
+        mvc.perform(put("/upsert-mountain").contentType(MediaType.APPLICATION_JSON)
+                        .content(annapurna.replace("8091", "8092")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(id));
+        mvc.perform(get("/country/Nepal/range/Annapurna/name/Annapurna I"))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].altitude").value(8092));
+    }
+
+    @Test
+    void eachAddedMountainGetsItsOwnResult() throws Exception {
+        String huascaran = "{\"name\":\"Huascaran\",\"altitude\":6768,\"range\":\"Andes\","
+                + "\"country\":\"Peru\",\"isNorthern\":false}";
+        int id = JsonPath.read(mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + huascaran + "]"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(), "$[0].id");
+
+        mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"name\":\"Alpamayo\",\"altitude\":5947,\"range\":\"Andes\","
+                                + "\"country\":\"Peru\",\"isNorthern\":false}," + huascaran + ","
+                                + huascaran.replace("6768", "6746") + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[1].status").value("ALREADY_EXISTED"))
+                .andExpect(jsonPath("$[1].id").value(id))
+                .andExpect(jsonPath("$[2].status").value("CONFLICT"))
+                .andExpect(jsonPath("$[2].id").value(id));
+        mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON).content("[" + huascaran + "]"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$[0].status").value("ALREADY_EXISTED"));
+    }
+
+    @Test
+    void batchQueriesAllReadTheSameSnapshot() throws Exception {
+        String lhotse = "[{\"name\":\"Lhotse\",\"altitude\":8516,\"range\":\"Himalayas\","
+                + "\"country\":\"Nepal\",\"isNorthern\":true}]";
+        int id = JsonPath.read(mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON).content(lhotse))
+                .andReturn().getResponse().getContentAsString(), "$[0].id");
+        String seq = mvc.perform(get("/")).andReturn().getResponse().getHeader("Snapshot-Sequence");
+        mvc.perform(delete("/delete-mountain/" + id)).andExpect(status().isOk());
+        mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON)
+                        .content(lhotse.replace("Lhotse", "Cho Oyu").replace("8516", "8188")))
+                .andExpect(status().isOk());
+        String batch = "[{\"country\":\"Nepal\",\"range\":\"Himalayas\"},{\"name\":\"Lhotse\"}]";
+
+        mvc.perform(post("/query").param("as-of", seq).contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Snapshot-Sequence", seq))
+                .andExpect(jsonPath("$[0].length()").value(1))
+                .andExpect(jsonPath("$[0][0].name").value("Lhotse"))
+                .andExpect(jsonPath("$[1][0].name").value("Lhotse"));
+        mvc.perform(post("/query").contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].length()").value(1))
+                .andExpect(jsonPath("$[0][0].name").value("Cho Oyu"))
+                .andExpect(jsonPath("$[1].length()").value(0));
+    }
+}
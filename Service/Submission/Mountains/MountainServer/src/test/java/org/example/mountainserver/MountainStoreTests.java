@@ -0,0 +1,297 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MountainStoreTests {
+
+    private static final int WRITERS = 64;
+    private static final int WRITES_PER_WRITER = 50;
+    private static final int ADDERS = 4;
+
+    @Test
+    void concurrentWritersEachGetTheirOwnResult() throws Exception {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        List<Future<List<HttpStatus>>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(WRITERS)) {
+            for (int writer = 0; writer < WRITERS; writer++) {
+                final int writerId = writer;
+                futures.add(executor.submit(() -> {
+                    List<HttpStatus> statuses = new ArrayList<>();
+                    for (int i = 0; i < WRITES_PER_WRITER; i++) {
+                        Mountain mountain = new Mountain("Peak" + writerId + "-" + i, 1000 + i,
+                                "Andes", "Peru", false);
+                        ResponseEntity<List<AddResult>> added = store.apply(new Mutation.Add(List.of(mountain)));
+                        statuses.add((HttpStatus) added.getStatusCode());
+                        int id = added.getBody().get(0).id();
+                        ResponseEntity<Void> deleted = store.apply(new Mutation.Delete(id));
+                        statuses.add((HttpStatus) deleted.getStatusCode());
+                        ResponseEntity<Void> deletedAgain = store.apply(new Mutation.Delete(id));
+                        statuses.add((HttpStatus) deletedAgain.getStatusCode());
+                    }
+                    return statuses;
+                }));
+            }
+        }
+
+        for (Future<List<HttpStatus>> future : futures) {
+            List<HttpStatus> statuses = future.get();
+            for (int i = 0; i < statuses.size(); i += 3) {
+                assertEquals(HttpStatus.OK, statuses.get(i));
+                assertEquals(HttpStatus.OK, statuses.get(i + 1));
+                assertEquals(HttpStatus.NOT_FOUND, statuses.get(i + 2));
+            }
+        }
+        assertEquals(0, store.query(mountain -> true).size());
+    }
+
+    @Test
+    void writersParkedBehindABatchAreWokenToFinish() throws Exception {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        List<Future<?>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(ADDERS + 1);
+        try {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < WRITES_PER_WRITER * 10; i++) {
+                    store.applyAll(List.of(new Mutation.Add(List.of(new Mountain("Batch " + i, 1000, "Andes",
+                            "Peru", false)))));
+                }
+            }));
+            for (int writer = 0; writer < ADDERS; writer++) {
+                final int writerId = writer;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < WRITES_PER_WRITER * 10; i++) {
+                        store.apply(new Mutation.Add(List.of(new Mountain("Peak" + writerId + "-" + i, 1000,
+                                "Andes", "Peru", false))));
+                    }
+                }));
+            }
+            // a writer left parked would hang here, so give up rather than wait for it
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(WRITES_PER_WRITER * 10 * (ADDERS + 1), store.query(mountain -> true).size());
+    }
+
+    @Test
+    void snapshotSeesTheStoreAsOfItsCommit() {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        int id = store.apply(new Mutation.Add(List.of(new Mountain("Makalu", 8485, "Himalayas", "Nepal", true))))
+                .getBody().get(0).id();
+
+        try (MountainStore.Snapshot before = store.openSnapshot()) {
+            store.apply(new Mutation.Update(id, new Mountain("Makalu", 8000, "Himalayas", "Nepal", true)));
+            store.apply(new Mutation.Delete(id));
+            store.collectGarbage();
+
+            assertEquals(8485, before.query(mountain -> true).get(0).getAltitude());
+            assertTrue(store.query(mountain -> true).isEmpty());
+        }
+    }
+
+    @Test
+    void closedSnapshotsAreCollected() {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        int id = store.apply(new Mutation.Add(List.of(new Mountain("Makalu", 8485, "Himalayas", "Nepal", true))))
+                .getBody().get(0).id();
+        long firstCommit = store.committedSeq();
+        store.apply(new Mutation.Update(id, new Mountain("Makalu", 8000, "Himalayas", "Nepal", true)));
+
+        Optional<MountainStore.Snapshot> retained = store.openSnapshot(firstCommit);
+        assertTrue(retained.isPresent());
+        retained.get().close();
+        store.collectGarbage();
+
+        assertFalse(store.openSnapshot(firstCommit).isPresent());
+        assertEquals(8000, store.query(mountain -> true).get(0).getAltitude());
+    }
+
+    @Test
+    void updatesCannotTakeAnotherMountainsNaturalKey() {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        Mountain makalu = new Mountain("Makalu", 8485, "Himalayas", "Nepal", true);
+        List<AddResult> added = store.apply(new Mutation.Add(List.of(makalu,
+                new Mountain("Lhotse", 8516, "Himalayas", "Nepal", true)))).getBody();
+        int lhotse = added.get(1).id();
+
+        assertEquals(HttpStatus.CONFLICT, store.apply(new Mutation.Update(lhotse,
+                new Mountain("Makalu", 8000, "Himalayas", "Nepal", true))).getStatusCode());
+        assertEquals(HttpStatus.CONFLICT, store.updateMountainIfMatch(lhotse,
+                new Mountain("Makalu", 8000, "Himalayas", "Nepal", true), 1).getStatusCode());
+        assertEquals(added.get(0).id(), store.apply(new Mutation.Upsert(makalu)).getBody());
+        store.apply(new Mutation.Delete(lhotse));
+
+        assertEquals(AddResult.Status.ALREADY_EXISTED,
+                store.apply(new Mutation.Add(List.of(makalu))).getBody().get(0).status());
+    }
+
+    @Test
+    void conditionalUpdatesToOneMountainLetExactlyOneWriterWin() throws Exception {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        int id = store.apply(new Mutation.Add(List.of(new Mountain("Makalu", 8485, "Himalayas", "Nepal", true))))
+                .getBody().get(0).id();
+        long version;
+        try (MountainStore.Snapshot snapshot = store.openSnapshot()) {
+            version = snapshot.versionOf(id);
+        }
+
+        List<Future<HttpStatus>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(WRITERS)) {
+            for (int writer = 0; writer < WRITERS; writer++) {
+                final int altitude = 8000 + writer;
+                futures.add(executor.submit(() -> (HttpStatus) store.updateMountainIfMatch(id,
+                        new Mountain("Makalu", altitude, "Himalayas", "Nepal", true), version).getStatusCode()));
+            }
+        }
+
+        int won = 0;
+        for (Future<HttpStatus> future : futures) {
+            HttpStatus status = future.get();
+            if (status == HttpStatus.OK) {
+                won++;
+            } else {
+                assertEquals(HttpStatus.PRECONDITION_FAILED, status);
+            }
+        }
+        assertEquals(1, won);
+        try (MountainStore.Snapshot snapshot = store.openSnapshot()) {
+            assertEquals(version + 1, snapshot.versionOf(id));
+        }
+    }
+
+    @Test
+    void conditionalUpdatesNeverLetAnAddClaimTheirNaturalKey() throws Exception {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        Mountain makalu = new Mountain("Makalu", 8485, "Himalayas", "Nepal", true);
+        int id = store.apply(new Mutation.Add(List.of(makalu))).getBody().get(0).id();
+
+        AtomicBoolean updating = new AtomicBoolean(true);
+        List<Future<Boolean>> adders = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(ADDERS + 1)) {
+            executor.submit(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    try (MountainStore.Snapshot snapshot = store.openSnapshot()) {
+                        store.updateMountainIfMatch(id, new Mountain("Makalu", 8000 + i % 100, "Himalayas", "Nepal",
+                                true), snapshot.versionOf(id));
+                    }
+                }
+                updating.set(false);
+            });
+            for (int adder = 0; adder < ADDERS; adder++) {
+                adders.add(executor.submit(() -> {
+                    boolean created = false;
+                    while (updating.get()) {
+                        created |= store.apply(new Mutation.Add(List.of(makalu))).getBody().get(0).status()
+                                == AddResult.Status.CREATED;
+                    }
+                    return created;
+                }));
+            }
+        }
+        for (Future<Boolean> adder : adders) {
+            assertFalse(adder.get());
+        }
+
+        long version;
+        try (MountainStore.Snapshot snapshot = store.openSnapshot()) {
+            version = snapshot.versionOf(id);
+        }
+        assertEquals(HttpStatus.OK, store.updateMountainIfMatch(id,
+                new Mountain("Makalu II", 8485, "Himalayas", "Nepal", true), version).getStatusCode());
+        assertEquals(AddResult.Status.ALREADY_EXISTED, store.apply(new Mutation.Add(List.of(
+                new Mountain("Makalu II", 8485, "Himalayas", "Nepal", true)))).getBody().get(0).status());
+        assertEquals(AddResult.Status.CREATED,
+                store.apply(new Mutation.Add(List.of(makalu))).getBody().get(0).status());
+    }
+
+    @Test
+    void parallelScanReturnsMatchesInTheOrderTheyWereAdded() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(1, 16, 4, registry));
+        List<Mountain> mountains = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            mountains.add(new Mountain("Peak " + i, 1000 + i, "Andes", "Peru", false));
+        }
+        store.apply(new Mutation.Add(mountains));
+
+        List<Mountain> even = store.query(mountain -> mountain.getAltitude() % 2 == 0);
+
+        assertEquals(2500, even.size());
+        for (int i = 0; i < even.size(); i++) {
+            assertEquals(1000 + 2 * i, even.get(i).getAltitude());
+        }
+        assertEquals(1, registry.get("mountain.scan.parallel").counter().count());
+        assertTrue(registry.get("mountain.scan.parallel.chunks").counter().count() > 1);
+    }
+
+    @Test
+    void columnQueriesAgreeWithOrWithoutAColumnarCopy() {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        List<Mountain> mountains = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            mountains.add(new Mountain("Peak " + i, 1000 + 10 * i, "Andes", "Peru", i % 2 == 0));
+        }
+        store.apply(new Mutation.Add(mountains));
+        ColumnFilter highNorthern = new ColumnFilter(1500, true);
+
+        try (MountainStore.Snapshot before = store.openSnapshot()) {
+            store.apply(new Mutation.DeleteMatching(mountain -> mountain.getAltitude() > 1800));
+            try (MountainStore.Snapshot latest = store.openSnapshot()) {
+                // the first read of the latest commit scans rows, the second copies it and the third shares the copy
+                for (int read = 0; read < 3; read++) {
+                    assertEquals(15, latest.query(highNorthern, mountain -> true).size());
+                }
+                assertEquals(14, latest.query(highNorthern, mountain -> mountain.getAltitude() != 1600).size());
+            }
+            // an older commit is never copied
+            assertEquals(24, before.query(highNorthern, mountain -> true).size());
+        }
+    }
+
+    @Test
+    void parallelHighestScanKeepsOnlyTheTopOfEachChunk() {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(1, 16, 4, new SimpleMeterRegistry()));
+        List<Mountain> mountains = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            mountains.add(new Mountain("Peak " + i, (i * 7919) % 5000, "Andes", "Peru", i % 3 == 0));
+        }
+        store.apply(new Mutation.Add(mountains));
+
+        try (MountainStore.Snapshot snapshot = store.openSnapshot()) {
+            List<Mountain> expected = snapshot.query(Mountain::getIsNorthern).stream()
+                    .sorted(TopK.HIGHEST_FIRST)
+                    .limit(10)
+                    .toList();
+            assertEquals(expected, snapshot.highestScanned(Mountain::getIsNorthern, 10));
+        }
+    }
+}
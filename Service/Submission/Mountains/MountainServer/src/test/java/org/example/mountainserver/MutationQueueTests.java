@@ -0,0 +1,92 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MutationQueueTests {
+
+    private MountainStore store;
+    private MutationQueue queue;
+
+    @BeforeEach
+    void createQueue() {
+        store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        queue = new MutationQueue(store, "async", 64, 16);
+    }
+
+    @AfterEach
+    void stopQueue() {
+        queue.stop();
+    }
+
+    @Test
+    void failingChangeOnlyFailsItsOwnOperation() throws InterruptedException {
+        // queued before the writer starts, so all three are applied as one batch
+        long first = queue.submit(new Mutation.Add(List.of(new Mountain("Everest", 8849, "Himalayas", "Nepal",
+                true)))).getAsLong();
+        long failing = queue.submit(new Mutation.DeleteMatching(mountain -> {
+            throw new IllegalStateException("broken filter");
+        })).getAsLong();
+        long last = queue.submit(new Mutation.Add(List.of(new Mountain("Makalu", 8485, "Himalayas", "Nepal",
+                true)))).getAsLong();
+        queue.start();
+
+        assertEquals(new OperationStatus(failing, OperationStatus.State.FAILED, 500, null), await(failing));
+        assertEquals(OperationStatus.State.COMPLETED, await(first).state());
+        assertEquals(200, await(first).status());
+        assertEquals(OperationStatus.State.COMPLETED, await(last).state());
+        assertEquals(2, store.query(mountain -> true).size());
+    }
+
+    @Test
+    void updatesToTheSameMountainAreCollapsed() throws InterruptedException {
+        store.apply(new Mutation.Add(List.of(new Mountain("Everest", 8849, "Himalayas", "Nepal", true))));
+        int everest = store.query(mountain -> true).get(0).getId();
+        long first = queue.submit(new Mutation.Update(everest, new Mountain("Everest", 8848, "Himalayas", "Nepal",
+                true))).getAsLong();
+        long second = queue.submit(new Mutation.Update(everest, new Mountain("Everest", 8850, "Himalayas", "Nepal",
+                true))).getAsLong();
+        queue.start();
+
+        assertEquals(OperationStatus.State.COMPLETED, await(first).state());
+        assertEquals(OperationStatus.State.COMPLETED, await(second).state());
+        assertEquals(8850, store.query(mountain -> true).get(0).getAltitude());
+        try (MountainStore.Snapshot snapshot = store.openSnapshot()) {
+            // one version for the add and one for both updates
+            assertEquals(2, snapshot.versionOf(everest));
+        }
+    }
+
+    @Test
+    void forgetsTheOldestFinishedOperations() throws InterruptedException {
+        queue = new MutationQueue(store, "async", 64, 2);
+        long first = queue.submit(new Mutation.Delete(1)).getAsLong();
+        long second = queue.submit(new Mutation.Delete(2)).getAsLong();
+        long third = queue.submit(new Mutation.Delete(3)).getAsLong();
+        queue.start();
+
+        assertEquals(404, await(third).status());
+        assertEquals(404, await(second).status());
+        assertTrue(queue.status(first).isEmpty());
+    }
+
+    private OperationStatus await(final long operationId) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            OperationStatus status = queue.status(operationId).orElseThrow();
+            if (status.state() != OperationStatus.State.PENDING) {
+                return status;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("operation " + operationId + " still pending");
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NameTrieTests {
+
+    private static final List<Mountain> MOUNTAINS = List.of(
+            new Mountain("Makalu", 8485, "Himalayas", "Nepal", true),
+            new Mountain("Manaslu", 8163, "Himalayas", "Nepal", true),
+            new Mountain("Mount Everest", 8849, "Himalayas", "Nepal", true),
+            new Mountain("Mount Elbrus", 5642, "Caucasus", "Russia", true),
+            new Mountain("Mount Kenya", 5199, "Mount Kenya", "Kenya", false),
+            new Mountain("Mont Blanc", 4806, "Alps", "France", true));
+
+    @Test
+    void suggestsHighestMountainsForAPrefixFollowingWrites() {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        store.apply(new Mutation.Add(MOUNTAINS));
+        NameTrie names = store.indexes().names();
+
+        assertEquals(List.of("Mount Everest", "Makalu", "Manaslu"), namesOf(names.highest("m", null, 3)));
+        assertEquals(List.of("Mount Everest", "Mount Elbrus", "Mount Kenya"),
+                namesOf(names.highest("MOUNT", null, 10)));
+        assertEquals(List.of("Mount Elbrus"), namesOf(names.highest("mount e", "Russia", 10)));
+        assertTrue(names.highest("mountain", null, 10).isEmpty());
+
+        int everest = store.query(mountain -> mountain.getName().equals("Mount Everest")).get(0).getId();
+        int makalu = store.query(mountain -> mountain.getName().equals("Makalu")).get(0).getId();
+        store.apply(new Mutation.Update(everest, new Mountain("Sagarmatha", 8849, "Himalayas", "Nepal", true)));
+        store.apply(new Mutation.Delete(makalu));
+
+        assertEquals(List.of("Manaslu", "Mount Elbrus", "Mount Kenya", "Mont Blanc"),
+                namesOf(names.highest("m", null, 10)));
+        assertEquals(List.of("Sagarmatha"), namesOf(names.highest("sag", null, 10)));
+    }
+
+    @Test
+    void matchesAScanOfTheLatestNames() {
+        Random random = new Random(7);
+        NameTrie names = new NameTrie();
+        Map<Integer, Mountain> latest = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            int id = random.nextInt(500);
+            Mountain before = latest.get(id);
+            Mountain after = null;
+            if (random.nextInt(4) > 0) {
+                after = new Mountain(randomName(random), random.nextInt(100), "Range", random.nextBoolean()
+                        ? "Nepal" : "Peru", true);
+                after.setId(id);
+                latest.put(id, after);
+            } else {
+                latest.remove(id);
+            }
+            names.changed(before, after);
+        }
+
+        for (String prefix : List.of("a", "ab", "Ba", "abc", "cab", "ccc", "abca")) {
+            for (String country : new String[] {null, "Peru"}) {
+                String key = prefix.toLowerCase(Locale.ROOT);
+                List<Integer> expected = latest.values().stream()
+                        .filter(mountain -> mountain.getName().toLowerCase(Locale.ROOT).startsWith(key))
+                        .filter(mountain -> country == null || country.equals(mountain.getCountry()))
+                        .sorted(TopK.HIGHEST_FIRST)
+                        .limit(7)
+                        .map(Mountain::getId)
+                        .toList();
+                assertEquals(expected, names.highest(prefix, country, 7).stream().map(Mountain::getId).toList(),
+                        prefix + " " + country);
+            }
+        }
+    }
+
+    private static String randomName(final Random random) {
+        StringBuilder name = new StringBuilder();
+        int length = 1 + random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            name.append("abcABC".charAt(random.nextInt(6)));
+        }
+        return name.toString();
+    }
+
+    private static List<String> namesOf(final List<Mountain> mountains) {
+        return mountains.stream().map(Mountain::getName).toList();
+    }
+}
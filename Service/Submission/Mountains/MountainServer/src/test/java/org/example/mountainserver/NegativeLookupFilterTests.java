@@ -0,0 +1,37 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class NegativeLookupFilterTests {
+
+    @Test
+    void lookupsForDeletedMountainsAreNotFalsePositives() {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        NegativeLookupFilter filter = new NegativeLookupFilter(store, registry, true);
+        int id = store.apply(new Mutation.Add(List.of(new Mountain("Everest", 8849, "Himalayas", "Nepal", true))))
+                .getBody().get(0).id();
+        store.apply(new Mutation.Delete(id));
+
+        MountainQuery byId = new MountainQuery(null, null, null, String.valueOf(id), null, null);
+        MountainQuery byKey = new MountainQuery("Nepal", "Himalayas", "Everest", null, null, null);
+        assertFalse(filter.definitelyAbsent(byId));
+        assertFalse(filter.definitelyAbsent(byKey));
+        filter.confirm(byId, false);
+        filter.confirm(byKey, false);
+
+        assertEquals(0, registry.get("mountain.bloom.false-positives").counters().stream()
+                .mapToDouble(counter -> counter.count()).sum());
+        assertEquals(1, registry.get("mountain.bloom.deleted-key-hits").tag("filter", "ids").counter().count());
+        assertEquals(1, registry.get("mountain.bloom.deleted-key-hits").tag("filter", "keys").counter().count());
+        assertEquals(0, registry.get("mountain.bloom.false-positive-rate").tag("filter", "keys").gauge().value());
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.mountainserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryCompilerTests {
+
+    private static final String[] COUNTRIES = {"Argentina", "Nepal", "Peru", "Wales"};
+    private static final String[] RANGES = {"Andes", "Himalayas", "Eryri"};
+
+    @Test
+    void compiledQueriesMatchTheSameMountainsAsTheirCriteria() {
+        Random random = new Random(11);
+        List<Mountain> mountains = new ArrayList<>();
+        for (int i = 1; i <= 500; i++) {
+            Mountain mountain = new Mountain("Peak " + i % 50, random.nextInt(1, 9000),
+                    RANGES[random.nextInt(RANGES.length)], COUNTRIES[random.nextInt(COUNTRIES.length)],
+                    random.nextBoolean());
+            mountain.setId(i);
+            mountains.add(mountain);
+        }
+        QueryCompiler compiler = new QueryCompiler();
+
+        // every shape, with each given criterion picked at random
+        for (int shape = 0; shape < 1 << 6; shape++) {
+            MountainQuery query = new MountainQuery(
+                    (shape & 1) == 0 ? null : COUNTRIES[random.nextInt(COUNTRIES.length)],
+                    (shape & 2) == 0 ? null : RANGES[random.nextInt(RANGES.length)],
+                    (shape & 4) == 0 ? null : "Peak " + random.nextInt(50),
+                    (shape & 8) == 0 ? null : String.valueOf(random.nextInt(1, 500)),
+                    (shape & 16) == 0 ? null : String.valueOf(random.nextBoolean()),
+                    (shape & 32) == 0 ? null : String.valueOf(random.nextInt(1, 9000)));
+            CompiledQuery compiled = compiler.compile(query);
+            Predicate<Mountain> other = compiled.otherColumns();
+
+            for (Mountain mountain : mountains) {
+                assertEquals(matches(query, mountain), compiled.filter().test(mountain), query.toString());
+                assertEquals(matches(query, mountain),
+                        other.test(mountain) && compiled.columns().test(mountain.getAltitude(),
+                                mountain.getIsNorthern()), query.toString());
+            }
+        }
+    }
+
+    @Test
+    void queriesOfOneShapeShareTheirShapesClass() {
+        QueryCompiler compiler = new QueryCompiler();
+        Predicate<Mountain> peru = compiler.compile(new MountainQuery("Peru", null, null, null, null, null)).filter();
+        Predicate<Mountain> nepal = compiler.compile(new MountainQuery("Nepal", null, null, null, null, null)).filter();
+        Predicate<Mountain> andes = compiler.compile(new MountainQuery(null, "Andes", null, null, null, null)).filter();
+
+        assertSame(peru.getClass(), nepal.getClass());
+        assertNotSame(peru.getClass(), andes.getClass());
+        assertTrue(peru.getClass().isHidden());
+    }
+
+    private static boolean matches(final MountainQuery query, final Mountain mountain) {
+        return (query.country() == null || mountain.getCountry().equals(query.country()))
+                && (query.range() == null || mountain.getRange().equals(query.range()))
+                && (query.name() == null || mountain.getName().equals(query.name()))
+                && (query.id() == null || mountain.getId() == Integer.parseInt(query.id()))
+                && (query.hemisphere() == null || String.valueOf(mountain.getIsNorthern()).equals(query.hemisphere()))
+                && (query.altitude() == null || mountain.getAltitude() > Integer.parseInt(query.altitude()));
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QueryPlannerTests {
+
+    private static final String[] COUNTRIES = {"Argentina", "Nepal", "Peru", "Wales"};
+    private static final String[] RANGES = {"Andes", "Himalayas", "Eryri"};
+    private static final int MOUNTAINS = 2000;
+
+    private final QueryCompiler compiler = new QueryCompiler();
+    private MountainStore store;
+    private QueryPlanner planner;
+
+    @BeforeEach
+    void fillStore() {
+        store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        planner = new QueryPlanner(store);
+        Random random = new Random(3);
+        List<Mountain> mountains = new ArrayList<>(MOUNTAINS);
+        for (int i = 0; i < MOUNTAINS; i++) {
+            mountains.add(new Mountain("Peak " + i, random.nextInt(1, 9000), RANGES[i % RANGES.length],
+                    COUNTRIES[i % COUNTRIES.length], random.nextBoolean()));
+        }
+        store.apply(new Mutation.Add(mountains));
+    }
+
+    @Test
+    void picksTheCheapestPathAndFindsTheSameMountainsAsAScan() {
+        assertPlan(QueryPlan.AccessPath.ID_LOOKUP, new MountainQuery(null, null, null, "7", null, null));
+        assertPlan(QueryPlan.AccessPath.INDEX_SEEK, new MountainQuery("Peru", "Andes", null, null, null, null));
+        assertPlan(QueryPlan.AccessPath.ALTITUDE_SEEK, new MountainQuery(null, null, null, null, null, "8900"));
+        assertPlan(QueryPlan.AccessPath.FULL_SCAN, new MountainQuery(null, null, null, null, "true", null));
+    }
+
+    @Test
+    void indexKeepsOldKeysUntilNoSnapshotNeedsThem() {
+        MountainQuery inPeru = new MountainQuery("Peru", "Andes", null, null, null, null);
+        int peruvian = store.query(mountain -> mountain.getCountry().equals("Peru")
+                && mountain.getRange().equals("Andes")).get(0).getId();
+        long before;
+        try (MountainStore.Snapshot old = store.openSnapshot()) {
+            before = planner.plan(inPeru, compiler.compile(inPeru)).execute(old).mountains().size();
+            store.apply(new Mutation.Update(peruvian, new Mountain("Moved", 1000, "Himalayas", "Nepal", true)));
+
+            assertEquals(before, planner.plan(inPeru, compiler.compile(inPeru)).execute(old).mountains().size());
+        }
+        store.collectGarbage();
+
+        try (MountainStore.Snapshot latest = store.openSnapshot()) {
+            QueryPlan plan = planner.plan(inPeru, compiler.compile(inPeru));
+            QueryPlan.Execution execution = plan.execute(latest);
+            assertEquals(QueryPlan.AccessPath.INDEX_SEEK, plan.accessPath());
+            assertEquals(before - 1, execution.mountains().size());
+            assertEquals(before - 1, execution.candidates());
+        }
+    }
+
+    @Test
+    void highestMountainsComeFromTheAltitudeIndexOrABoundedHeap() {
+        assertTop(QueryPlan.AccessPath.ALTITUDE_ORDER, new MountainQuery(null, null, null, null, null, null), 10);
+        assertTop(QueryPlan.AccessPath.ALTITUDE_ORDER, new MountainQuery("Peru", null, null, null, "true", null), 10);
+        assertTop(QueryPlan.AccessPath.INDEX_SEEK, new MountainQuery("Peru", "Andes", null, null, null, null), 50);
+    }
+
+    @Test
+    void loweredMountainLeavesTheTopOnlyForLaterSnapshots() {
+        MountainQuery all = new MountainQuery(null, null, null, null, null, null);
+        QueryPlan plan = planner.planTop(all, compiler.compile(all), 3);
+        try (MountainStore.Snapshot old = store.openSnapshot()) {
+            List<Mountain> before = plan.top(old, 3);
+            Mountain highest = before.get(0);
+            store.apply(new Mutation.Update(highest.getId(), new Mountain(highest.getName(), 1, highest.getRange(),
+                    highest.getCountry(), highest.getIsNorthern())));
+
+            assertEquals(before, plan.top(old, 3));
+            try (MountainStore.Snapshot latest = store.openSnapshot()) {
+                List<Mountain> after = plan.top(latest, 3);
+                assertEquals(before.subList(1, 3), after.subList(0, 2));
+                assertEquals(3, after.stream().map(Mountain::getId).distinct().count());
+            }
+        }
+    }
+
+    private void assertTop(final QueryPlan.AccessPath expected, final MountainQuery query, final int k) {
+        CompiledQuery compiled = compiler.compile(query);
+        QueryPlan plan = planner.planTop(query, compiled, k);
+        assertEquals(expected, plan.accessPath(), query.toString());
+        try (MountainStore.Snapshot snapshot = store.openSnapshot()) {
+            List<Mountain> sorted = new ArrayList<>(snapshot.query(compiled.filter()));
+            sorted.sort(TopK.HIGHEST_FIRST);
+            assertEquals(sorted.subList(0, k), plan.top(snapshot, k), query.toString());
+        }
+    }
+
+    private void assertPlan(final QueryPlan.AccessPath expected, final MountainQuery query) {
+        CompiledQuery compiled = compiler.compile(query);
+        QueryPlan plan = planner.plan(query, compiled);
+        assertEquals(expected, plan.accessPath(), query.toString());
+        try (MountainStore.Snapshot snapshot = store.openSnapshot()) {
+            assertEquals(snapshot.query(compiled.filter()), plan.execute(snapshot).mountains(), query.toString());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.mountainserver;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScalableBloomFilterTests {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    void growsPastItsCapacityWithoutFalseNegativesOrTooManyFalsePositives() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, FALSE_POSITIVE_RATE);
+        int added = 100_000;
+        for (int id = 0; id < added; id++) {
+            filter.add(ScalableBloomFilter.hash(id));
+        }
+        for (int id = 0; id < added; id++) {
+            assertTrue(filter.mightContain(ScalableBloomFilter.hash(id)));
+        }
+        assertTrue(filter.slices() > 1);
+
+        int falsePositives = 0;
+        int tried = 100_000;
+        for (int id = added; id < added + tried; id++) {
+            if (filter.mightContain(ScalableBloomFilter.hash(id))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < tried * FALSE_POSITIVE_RATE, falsePositives + " false positives");
+        assertTrue(filter.expectedFalsePositiveRate() < FALSE_POSITIVE_RATE);
+    }
+
+    @Test
+    void keysDifferingOnlyInWhereTheSeparatorFallsAreKeptApart() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(16, FALSE_POSITIVE_RATE);
+        filter.add(MountainIndexes.keyHash("Peru", "Andes", "Huascaran"));
+
+        assertTrue(filter.mightContain(MountainIndexes.keyHash("Peru", "Andes", "Huascaran")));
+        assertFalse(filter.mightContain(MountainIndexes.keyHash("PeruA", "ndes", "Huascaran")));
+        assertFalse(filter.mightContain(MountainIndexes.keyHash("Peru", "Andes", null)));
+    }
+}
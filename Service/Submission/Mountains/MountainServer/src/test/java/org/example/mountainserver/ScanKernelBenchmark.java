@@ -0,0 +1,113 @@
+package org.example.mountainserver;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Time per scan of an altitude and hemisphere query done four ways: the chain of six lambdas the
+ * GET routes used to build, the predicate the query compiler builds now, the scalar kernel and, when
+ * the module is present, the vector kernel. Each kernel figure includes turning the selection
+ * bitmap back into a list of mountains.
+ * Only runs when asked for: mvn test -Dtest=ScanKernelBenchmark -Dbenchmark=true
+ * 10 million rows need a heap of about 1.5 GB.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ScanKernelBenchmark {
+
+    private static final int WARM_UP = 5;
+    private static final int MEASURED = 15;
+    private static final String[] NAMES = new String[1000];
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            NAMES[i] = "Peak " + i;
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1_000_000, 10_000_000})
+    void altitudeAndHemisphere(final int rows) {
+        Random random = new Random(7);
+        List<Mountain> mountains = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            mountains.add(new Mountain(NAMES[i % NAMES.length], random.nextInt(1, 9000), "Andes", "Peru",
+                    random.nextBoolean()));
+        }
+        MountainColumns columns = new MountainColumns(1, mountains);
+        Predicate<Mountain> chain = lambdaChain(null, null, null, null, "true", "4000");
+        ColumnFilter filter = new ColumnFilter(4000, true);
+
+        time("lambda chain", rows, () -> {
+            List<Mountain> matches = new ArrayList<>();
+            for (Mountain mountain : mountains) {
+                if (chain.test(mountain)) {
+                    matches.add(mountain);
+                }
+            }
+            return matches.size();
+        });
+        Predicate<Mountain> compiled = new QueryCompiler().compile(new MountainQuery(null, null, null, null, "true",
+                "4000")).filter();
+        time("compiled predicate", rows, () -> {
+            List<Mountain> matches = new ArrayList<>();
+            for (Mountain mountain : mountains) {
+                if (compiled.test(mountain)) {
+                    matches.add(mountain);
+                }
+            }
+            return matches.size();
+        });
+        time("scalar kernel", rows, () -> materialise(columns, new ScalarScanKernel().select(columns, filter)));
+        ScanKernel best = ScanKernel.best();
+        if (!(best instanceof ScalarScanKernel)) {
+            time(best.name() + " kernel", rows, () -> materialise(columns, best.select(columns, filter)));
+        }
+    }
+
+    private static void time(final String name, final int rows, final Supplier<Integer> scan) {
+        long[] nanos = new long[MEASURED];
+        int matches = 0;
+        for (int i = 0; i < WARM_UP + MEASURED; i++) {
+            long start = System.nanoTime();
+            matches = scan.get();
+            if (i >= WARM_UP) {
+                nanos[i - WARM_UP] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%,11d rows %-26s median %8.2f ms, best %8.2f ms (%,d matches)%n", rows, name,
+                nanos[MEASURED / 2] / 1e6, nanos[0] / 1e6, matches);
+    }
+
+    private static int materialise(final MountainColumns columns, final long[] selection) {
+        List<Mountain> matches = new ArrayList<>();
+        for (int word = 0; word < selection.length; word++) {
+            for (long bits = selection[word]; bits != 0; bits &= bits - 1) {
+                matches.add(columns.row(word * Long.SIZE + Long.numberOfTrailingZeros(bits)));
+            }
+        }
+        return matches.size();
+    }
+
+    /**
+     * The chain of predicates MountainResource built for the GET routes before the query compiler.
+     */
+    private static Predicate<Mountain> lambdaChain(final String country, final String range, final String name,
+                                                   final String id, final String hemisphere, final String altitude) {
+        Predicate<Mountain> filter = mountain -> country == null || mountain.getCountry().equals(country);
+        return filter
+                .and(mountain -> range == null || mountain.getRange().equals(range))
+                .and(mountain -> name == null || mountain.getName().equals(name))
+                .and(mountain -> id == null || mountain.getId() == Integer.parseInt(id))
+                .and(mountain -> hemisphere == null || String.valueOf(mountain.getIsNorthern()).equals(hemisphere))
+                .and(mountain -> altitude == null || mountain.getAltitude() > Integer.parseInt(altitude));
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.mountainserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ScanKernelTests {
+
+    // not a multiple of any vector length, so the scalar tail is exercised too
+    private static final int ROWS = 1000 + 37;
+
+    @Test
+    void everyKernelSelectsTheSameRows() {
+        Random random = new Random(42);
+        List<Mountain> mountains = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            mountains.add(new Mountain("Peak " + i, random.nextInt(1, 9000), "Andes", "Peru", random.nextBoolean()));
+        }
+        MountainColumns columns = new MountainColumns(1, mountains);
+        ScanKernel best = ScanKernel.best();
+        ScanKernel scalar = new ScalarScanKernel();
+
+        for (ColumnFilter filter : List.of(new ColumnFilter(4000, null), new ColumnFilter(null, true),
+                new ColumnFilter(null, false), new ColumnFilter(6000, true), new ColumnFilter(2000, false))) {
+            long[] expected = new long[(ROWS + Long.SIZE - 1) / Long.SIZE];
+            for (int i = 0; i < ROWS; i++) {
+                Mountain mountain = mountains.get(i);
+                if (filter.test(mountain.getAltitude(), mountain.getIsNorthern())) {
+                    expected[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+                }
+            }
+            assertArrayEquals(expected, scalar.select(columns, filter), filter.toString());
+            assertArrayEquals(expected, best.select(columns, filter), best.name() + " " + filter);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.example.mountainserver;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedMountainStoreTests {
+
+    private static final int SHARDS = 4;
+    private static final int WRITERS = 16;
+    private static final int WRITES_PER_WRITER = 50;
+
+    private ShardedMountainStore store;
+
+    @BeforeEach
+    void startShards() {
+        store = new ShardedMountainStore("sharded", SHARDS, Duration.ofSeconds(5), new IdAllocator(16, ""));
+        store.start();
+    }
+
+    @AfterEach
+    void stopShards() {
+        store.stop();
+    }
+
+    @Test
+    void concurrentAddsAreSpreadAcrossShardsWithUniqueIds() throws Exception {
+        List<Future<List<Integer>>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(WRITERS)) {
+            for (int writer = 0; writer < WRITERS; writer++) {
+                final int writerId = writer;
+                futures.add(executor.submit(() -> {
+                    List<Integer> ids = new ArrayList<>();
+                    for (int i = 0; i < WRITES_PER_WRITER; i++) {
+                        Mountain mountain = new Mountain("Peak" + writerId + "-" + i, 1000 + i, "Andes", "Peru",
+                                false);
+                        ids.add(store.addMountains(List.of(mountain)).getBody().get(0).id());
+                    }
+                    return ids;
+                }));
+            }
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        Set<Integer> shardsUsed = new HashSet<>();
+        for (Future<List<Integer>> future : futures) {
+            for (int id : future.get()) {
+                assertTrue(ids.add(id));
+                shardsUsed.add(id % SHARDS);
+            }
+        }
+        assertEquals(SHARDS, shardsUsed.size());
+        assertEquals(WRITERS * WRITES_PER_WRITER, store.query(mountain -> true).size());
+    }
+
+    @Test
+    void renamedMountainIsFoundByItsNewKey() {
+        int id = store.addMountains(List.of(new Mountain("Lhotse", 8516, "Himalayas", "Nepal", true)))
+                .getBody().get(0).id();
+        store.updateMountain(id, new Mountain("Lhotse Shar", 8383, "Himalayas", "Nepal", true));
+
+        ResponseEntity<List<AddResult>> again = store.addMountains(
+                List.of(new Mountain("Lhotse Shar", 8383, "Himalayas", "Nepal", true)));
+        assertEquals(HttpStatus.CONFLICT, again.getStatusCode());
+        assertEquals(id, again.getBody().get(0).id());
+
+        ResponseEntity<Integer> upserted = store.upsertMountain(new Mountain("Lhotse Shar", 8400, "Himalayas",
+                "Nepal", true));
+        assertEquals(HttpStatus.OK, upserted.getStatusCode());
+        assertEquals(id, upserted.getBody());
+        assertEquals(HttpStatus.CREATED, store.upsertMountain(new Mountain("Lhotse", 8516, "Himalayas", "Nepal",
+                true)).getStatusCode());
+    }
+
+    @Test
+    void conditionalUpdateChecksTheStoredVersion() {
+        int id = store.addMountains(List.of(new Mountain("Makalu", 8485, "Himalayas", "Nepal", true)))
+                .getBody().get(0).id();
+        Mountain taller = new Mountain("Makalu", 8486, "Himalayas", "Nepal", true);
+
+        assertEquals(HttpStatus.OK, store.updateMountainIfMatch(id, taller, 1).getStatusCode());
+        assertEquals(HttpStatus.PRECONDITION_FAILED, store.updateMountainIfMatch(id, taller, 1).getStatusCode());
+        assertEquals(2, store.query(mountain -> mountain.getId() == id).get(0).version());
+    }
+
+    @Test
+    void highestMountainsAreMergedFromEveryShard() throws Exception {
+        List<Mountain> mountains = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            mountains.add(new Mountain("Peak " + i, 1000 + (i * 37) % 200, "Andes", i % 2 == 0 ? "Peru" : "Nepal",
+                    false));
+        }
+        store.addMountains(mountains);
+
+        List<ShardedMountainStore.Stored> top = store.top(mountain -> mountain.getCountry().equals("Peru"), 5)
+                .get(5, TimeUnit.SECONDS);
+        List<Integer> altitudes = new ArrayList<>();
+        for (ShardedMountainStore.Stored stored : top) {
+            altitudes.add(stored.mountain().getAltitude());
+        }
+        assertEquals(List.of(1198, 1196, 1194, 1192, 1190), altitudes);
+    }
+
+    @Test
+    void queryPastItsDeadlineIsAbandonedOnEveryShard() throws Exception {
+        ShardedMountainStore slowStore = new ShardedMountainStore("sharded", SHARDS, Duration.ofMillis(50),
+                new IdAllocator(16, ""));
+        slowStore.start();
+        try {
+            int total = SHARDS * 4096;
+            List<Mountain> mountains = new ArrayList<>(total);
+            for (int i = 0; i < total; i++) {
+                mountains.add(new Mountain("Peak " + i, 1000 + i, "Andes", "Peru", false));
+            }
+            slowStore.addMountains(mountains);
+            AtomicInteger tested = new AtomicInteger();
+            CompletableFuture<List<List<ShardedMountainStore.Stored>>> slow = slowStore.queryAll(List.of(mountain -> {
+                tested.incrementAndGet();
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                return true;
+            }));
+
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> slow.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, failure.getCause());
+            Thread.sleep(1000);
+            assertTrue(tested.get() < total, "shards kept scanning after the deadline");
+        } finally {
+            slowStore.stop();
+        }
+    }
+}
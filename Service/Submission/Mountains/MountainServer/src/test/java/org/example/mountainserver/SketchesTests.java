@@ -0,0 +1,80 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SketchesTests {
+
+    @Test
+    void distinctCountsStayWithinTheStandardError() {
+        HyperLogLog small = new HyperLogLog(12);
+        HyperLogLog half = new HyperLogLog(12);
+        HyperLogLog other = new HyperLogLog(12);
+        for (int i = 0; i < 100; i++) {
+            small.add(ScalableBloomFilter.hash("Peak " + i));
+            small.add(ScalableBloomFilter.hash("Peak " + i));
+        }
+        for (int i = 0; i < 200_000; i++) {
+            (i % 2 == 0 ? half : other).add(ScalableBloomFilter.hash("Peak " + i));
+        }
+        half.addAll(other);
+
+        assertEquals(100, small.estimate(), 2);
+        // three standard errors
+        assertEquals(200_000, half.estimate(), 200_000 * 3 * half.relativeStandardError());
+    }
+
+    @Test
+    void quantilesStayWithinTheRankError() {
+        Random random = new Random(7);
+        TDigest digest = new TDigest(100);
+        TDigest other = new TDigest(100);
+        double[] values = new double[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // skewed, like altitudes: many low hills and a few high peaks
+            values[i] = 100 + 8000 * Math.pow(random.nextDouble(), 3);
+            (i % 3 == 0 ? other : digest).add(values[i]);
+        }
+        digest.addAll(other);
+        Arrays.sort(values);
+
+        assertEquals(values.length, digest.count());
+        for (double q : new double[] {0.01, 0.25, 0.5, 0.75, 0.99, 0.999}) {
+            double estimate = digest.quantile(q);
+            int rank = Arrays.binarySearch(values, estimate);
+            double estimatedQ = (rank >= 0 ? rank : -rank - 1) / (double) values.length;
+            assertTrue(Math.abs(estimatedQ - q) <= 0.01, q + " came out as " + estimatedQ);
+        }
+        assertEquals(values[0], digest.quantile(0));
+        assertEquals(values[values.length - 1], digest.quantile(1));
+    }
+
+    @Test
+    void quantilesFollowAnUpdatedAltitudeOnceRebuilt() {
+        MountainStore store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        store.apply(new Mutation.Add(List.of(new Mountain("Pen y Fan", 886, "BannauBrycheiniog", "Wales", true))));
+        int penYFan = store.query(mountain -> true).get(0).getId();
+        store.apply(new Mutation.Update(penYFan, new Mountain("Pen y Fan", 999, "BannauBrycheiniog", "Wales",
+                true)));
+        MountainSketches sketches = store.indexes().sketches();
+        assertTrue(sketches.isStale());
+
+        store.collectGarbage();
+
+        SketchStats stats = MountainSketches.describe(List.of(sketches), "Wales", null, List.of(0.0, 1.0));
+        assertEquals(1, stats.altitudesSeen());
+        assertEquals(999, stats.altitudeQuantiles().get("0.0"));
+        assertEquals(999, stats.altitudeQuantiles().get("1.0"));
+        assertFalse(sketches.isStale());
+    }
+}
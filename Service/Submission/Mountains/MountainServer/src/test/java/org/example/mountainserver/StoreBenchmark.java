@@ -0,0 +1,120 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Throughput of the shared multi-version store against the sharded store, with as many client
+ * threads as shards, on a mix of id lookups, country scans and updates.
+ * Only runs when asked for: mvn test -Dtest=StoreBenchmark -Dbenchmark=true
+ * The figures only mean something on a machine with at least as many cores as the run uses.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class StoreBenchmark {
+
+    private static final int MOUNTAINS = 10_000;
+    private static final int WRITE_PERCENT = 10;
+    private static final int SCAN_PERCENT = 5;
+    private static final Duration WARM_UP = Duration.ofSeconds(2);
+    private static final Duration MEASURE = Duration.ofSeconds(5);
+    private static final String[] COUNTRIES = {"Argentina", "Nepal", "Peru", "Wales"};
+
+    @ParameterizedTest
+    @ValueSource(ints = {8, 16, 32})
+    void mvccStore(final int cores) throws InterruptedException {
+        MountainStore store = new MountainStore(10_000, Duration.ofMillis(100), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        store.start();
+        try {
+            store.apply(new Mutation.Add(mountains()));
+            run("mvcc", cores, random -> {
+                int roll = random.nextInt(100);
+                int id = 1 + random.nextInt(MOUNTAINS);
+                if (roll < WRITE_PERCENT) {
+                    store.apply(new Mutation.Update(id, mountain(id, random.nextInt(1, 9000))));
+                } else if (roll < WRITE_PERCENT + SCAN_PERCENT) {
+                    String country = COUNTRIES[random.nextInt(COUNTRIES.length)];
+                    store.query(mountain -> mountain.getCountry().equals(country));
+                } else {
+                    store.query(mountain -> mountain.getId() == id);
+                }
+            });
+        } finally {
+            store.stop();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {8, 16, 32})
+    void shardedStore(final int cores) throws InterruptedException {
+        ShardedMountainStore store = new ShardedMountainStore("sharded", cores, Duration.ofSeconds(5),
+                new IdAllocator(1024, ""));
+        store.start();
+        try {
+            List<Integer> ids = new ArrayList<>(MOUNTAINS);
+            for (AddResult added : store.addMountains(mountains()).getBody()) {
+                ids.add(added.id());
+            }
+            run("sharded", cores, random -> {
+                int roll = random.nextInt(100);
+                int id = ids.get(random.nextInt(MOUNTAINS));
+                if (roll < WRITE_PERCENT) {
+                    store.updateMountain(id, mountain(id, random.nextInt(1, 9000)));
+                } else if (roll < WRITE_PERCENT + SCAN_PERCENT) {
+                    String country = COUNTRIES[random.nextInt(COUNTRIES.length)];
+                    store.query(mountain -> mountain.getCountry().equals(country));
+                } else {
+                    store.query(mountain -> mountain.getId() == id);
+                }
+            });
+        } finally {
+            store.stop();
+        }
+    }
+
+    private static void run(final String name, final int threads, final Consumer<ThreadLocalRandom> operation)
+            throws InterruptedException {
+        LongAdder completed = new LongAdder();
+        long warmUpEnd = System.nanoTime() + WARM_UP.toNanos();
+        long end = warmUpEnd + MEASURE.toNanos();
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    operation.accept(random);
+                    if (now >= warmUpEnd) {
+                        completed.increment();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        System.out.printf("%-8s %2d threads: %,12.0f ops/s (%d available processors)%n", name, threads,
+                completed.sum() / (double) MEASURE.toSeconds(), Runtime.getRuntime().availableProcessors());
+    }
+
+    private static List<Mountain> mountains() {
+        List<Mountain> mountains = new ArrayList<>(MOUNTAINS);
+        for (int id = 1; id <= MOUNTAINS; id++) {
+            mountains.add(mountain(id, 1000 + id % 8000));
+        }
+        return mountains;
+    }
+
+    private static Mountain mountain(final int id, final int altitude) {
+        return new Mountain("Peak " + id, altitude, "Andes", COUNTRIES[id % COUNTRIES.length], id % 2 == 0);
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.mountainserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WorkloadTrackerTests {
+
+    private static final int MOUNTAINS = 2000;
+
+    private final QueryCompiler compiler = new QueryCompiler();
+    private MountainStore store;
+    private QueryPlanner planner;
+    private WorkloadTracker tracker;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void fillStore() {
+        store = new MountainStore(0, Duration.ofSeconds(1), new IdAllocator(1024, ""),
+                new ParallelScanner(50_000, 4096, 0, new SimpleMeterRegistry()));
+        planner = new QueryPlanner(store);
+        registry = new SimpleMeterRegistry();
+        tracker = new WorkloadTracker(store, registry, true, 1000, Duration.ofMillis(50),
+                Duration.ofMinutes(1));
+        List<Mountain> mountains = new ArrayList<>(MOUNTAINS);
+        for (int i = 0; i < MOUNTAINS; i++) {
+            mountains.add(new Mountain("Peak " + i, 1000 + i, "Andes", "Peru", i % 2 == 0));
+        }
+        store.apply(new Mutation.Add(mountains));
+    }
+
+    @Test
+    void scannedShapeGetsAnIndexThatIsDroppedOnceIdle() throws InterruptedException {
+        MountainQuery byName = new MountainQuery(null, null, "Peak 7", null, null, null);
+        assertEquals(QueryPlan.AccessPath.FULL_SCAN, run(byName));
+
+        tracker.adapt();
+        assertEquals(QueryPlan.AccessPath.INDEX_SEEK, run(byName));
+        assertEquals(2, store.indexes().secondaryIndexes().size());
+
+        Thread.sleep(100);
+        tracker.adapt();
+        assertEquals(1, store.indexes().secondaryIndexes().size());
+        assertEquals(QueryPlan.AccessPath.FULL_SCAN, run(byName));
+    }
+
+    @Test
+    void unselectiveShapeNeverGetsAnIndex() {
+        MountainQuery northern = new MountainQuery(null, null, null, null, "true", null);
+        run(northern);
+        run(northern);
+
+        tracker.adapt();
+        assertEquals(1, store.indexes().secondaryIndexes().size());
+    }
+
+    @Test
+    void queriesAreTimedPerShape() {
+        run(new MountainQuery(null, null, "Peak 7", null, null, null));
+        run(new MountainQuery(null, null, "Peak 8", null, null, null));
+        run(new MountainQuery(null, null, null, null, "true", "2500"));
+
+        assertEquals(2, registry.get("mountain.queries").tag("shape", "name").timer().count());
+        assertEquals(1, registry.get("mountain.queries").tag("shape", "hemisphere+altitude").timer().count());
+    }
+
+    private QueryPlan.AccessPath run(final MountainQuery query) {
+        QueryPlan plan = planner.plan(query, compiler.compile(query));
+        try (MountainStore.Snapshot snapshot = store.openSnapshot()) {
+            QueryPlan.Execution execution = plan.execute(snapshot);
+            assertEquals(1, query.name() == null ? 1 : execution.mountains().size());
+            tracker.record(query, execution, 0);
+        }
+        return plan.accessPath();
+    }
+}